@@ -0,0 +1,200 @@
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// fixed size pool of JDBC connections shared by every data source controller
+// call; callers borrow a connection, use it and close it to give it back
+public class ConnectionPool {
+
+	public static final int DEFAULT_SIZE = 4;
+	public static final long DEFAULT_BORROW_TIMEOUT_MILLIS = 5000;
+
+	// seconds given to Connection.isValid before a connection is dropped
+	public static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+	private final String url;
+	private final Properties info;
+	private final int size;
+	private final long borrowTimeoutMillis;
+	private final int statementCacheSize;
+
+	// statement cache counters summed over every connection of the pool
+	private final StatementCache.Stats statementStats = new StatementCache.Stats();
+
+	// connections opened earlier and currently not borrowed
+	private final BlockingQueue<PooledConnection> idle;
+
+	// one permit per connection that may be borrowed at the same time
+	private final Semaphore permits;
+
+	// every connection opened and not closed yet, borrowed or idle
+	private final Set<PooledConnection> open = ConcurrentHashMap.newKeySet();
+
+	private volatile boolean closed;
+
+	// constructor; info holds the driver properties, user and password included
+	public ConnectionPool(String url, Properties info, int size, long borrowTimeoutMillis, int statementCacheSize) {
+		if (size < 1)
+			throw new IllegalArgumentException("[ERROR] Pool size cannot be less than 1");
+		if (borrowTimeoutMillis < 0)
+			throw new IllegalArgumentException("[ERROR] Borrow timeout cannot be negative");
+		if (statementCacheSize < 1)
+			throw new IllegalArgumentException("[ERROR] Statement cache size cannot be less than 1");
+
+		this.url = url;
+		this.info = info;
+		this.size = size;
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+		this.statementCacheSize = statementCacheSize;
+		this.idle = new LinkedBlockingQueue<PooledConnection>();
+		this.permits = new Semaphore(size, true);
+	}
+
+	// constructor
+	public ConnectionPool(String url, String user, String password) {
+		this(url, credentials(user, password), DEFAULT_SIZE, DEFAULT_BORROW_TIMEOUT_MILLIS, StatementCache.DEFAULT_SIZE);
+	}
+
+	public static Properties credentials(String user, String password) {
+		Properties info = new Properties();
+		info.setProperty("user", user);
+		info.setProperty("password", password);
+
+		return info;
+	}
+
+	// waits up to the borrow timeout for a free connection; idle connections
+	// are validated before being handed out and replaced when broken; the
+	// time taken is recorded in FridgeMetrics as pool.borrow
+	public PooledConnection borrow() throws SQLException {
+		long start = System.nanoTime();
+		boolean failed = true;
+
+		try
+		{
+			PooledConnection pooled = acquire();
+			failed = false;
+			return pooled;
+		}
+		finally
+		{
+			FridgeMetrics.INSTANCE.record("pool.borrow", System.nanoTime() - start, 0, failed);
+		}
+	}
+
+	private PooledConnection acquire() throws SQLException {
+		if (closed)
+			throw new SQLException("[ERROR] Connection pool is closed");
+
+		try
+		{
+			if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS))
+				throw new SQLTimeoutException("[ERROR] No connection available after " + borrowTimeoutMillis + " ms");
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new SQLException("[ERROR] Interrupted while waiting for a connection", e);
+		}
+
+		try
+		{
+			PooledConnection pooled = idle.poll();
+
+			while (pooled != null && !pooled.isValid(VALIDATION_TIMEOUT_SECONDS))
+			{
+				discard(pooled);
+				pooled = idle.poll();
+			}
+
+			if (pooled == null)
+			{
+				pooled = new PooledConnection(this, DriverManager.getConnection(url, info),
+					new StatementCache(statementCacheSize, statementStats));
+				open.add(pooled);
+			}
+
+			pooled.setBorrowed(true);
+			return pooled;
+		}
+		catch (SQLException | RuntimeException e)
+		{
+			permits.release();
+			throw e;
+		}
+	}
+
+	// called by PooledConnection.close(); puts the connection back in a clean state
+	void release(PooledConnection pooled) {
+		try
+		{
+			if (closed || !pooled.reset())
+				discard(pooled);
+			else
+				idle.offer(pooled);
+		}
+		finally
+		{
+			permits.release();
+		}
+	}
+
+	public int getSize() {
+		return this.size;
+	}
+
+	public long getBorrowTimeoutMillis() {
+		return this.borrowTimeoutMillis;
+	}
+
+	public int getStatementCacheSize() {
+		return this.statementCacheSize;
+	}
+
+	public StatementCache.Stats getStatementStats() {
+		return this.statementStats;
+	}
+
+	public int getIdleCount() {
+		return idle.size();
+	}
+
+	public int getActiveCount() {
+		return size - permits.availablePermits();
+	}
+
+	// closes idle connections now; borrowed ones are closed when given back
+	public void close() {
+		closed = true;
+
+		PooledConnection pooled;
+		while ((pooled = idle.poll()) != null)
+			discard(pooled);
+	}
+
+	private void discard(PooledConnection pooled) {
+		open.remove(pooled);
+		pooled.closePhysical();
+	}
+
+	// cancels the statements running on the connections thread has
+	// borrowed; returns how many were cancelled
+	public int cancel(Thread thread) {
+		int cancelled = 0;
+		for (PooledConnection pooled: open)
+		{
+			if (pooled.cancel(thread))
+				cancelled++;
+		}
+
+		return cancelled;
+	}
+
+	public String toString() {
+		return "[ size: " + this.size
+			+ ", active: " + getActiveCount()
+			+ ", idle: " + getIdleCount()
+			+ ", statements: " + this.statementStats
+			+ " ]";
+	}
+}
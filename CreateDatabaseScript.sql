@@ -59,12 +59,16 @@ DROP TABLE IF EXISTS `grocery`;
 CREATE TABLE `grocery` (
   `id` int(11) NOT NULL AUTO_INCREMENT,
   `itemName` varchar(20) NOT NULL,
-  `date` varchar(10) DEFAULT NULL,
+  `date` date DEFAULT NULL,
   `quantity` int(11) DEFAULT NULL,
   `section` varchar(10) DEFAULT NULL,
+  `version` bigint(20) NOT NULL DEFAULT '0',
   PRIMARY KEY (`id`),
   UNIQUE KEY `id_UNIQUE` (`id`),
   KEY `itemName_idx` (`itemName`),
+  KEY `section_date_idx` (`section`,`date`),
+  KEY `itemName_date_idx` (`itemName`,`date`),
+  KEY `version_idx` (`version`),
   CONSTRAINT `fk_grocery_item` FOREIGN KEY (`itemName`) REFERENCES `item` (`name`) ON DELETE NO ACTION ON UPDATE NO ACTION
 ) ENGINE=InnoDB AUTO_INCREMENT=34 DEFAULT CHARSET=utf8;
 /*!40101 SET character_set_client = @saved_cs_client */;
@@ -75,10 +79,63 @@ CREATE TABLE `grocery` (
 
 LOCK TABLES `grocery` WRITE;
 /*!40000 ALTER TABLE `grocery` DISABLE KEYS */;
-INSERT INTO `grocery` VALUES (5,'Ice Cream','16/08/2019',1,'FREEZER'),(6,'Paddle Pop','17/08/2019',1,'FREEZER'),(19,'Fish','20/08/2019',1,'MEAT'),(33,'Beef','24/08/2019',3,'MEAT');
+INSERT INTO `grocery` VALUES (5,'Ice Cream','2019-08-16',1,'FREEZER',0),(6,'Paddle Pop','2019-08-17',1,'FREEZER',0),(19,'Fish','2019-08-20',1,'MEAT',0),(33,'Beef','2019-08-24',3,'MEAT',0);
 /*!40000 ALTER TABLE `grocery` ENABLE KEYS */;
 UNLOCK TABLES;
 
+--
+-- Table structure for table `grocery_version`
+--
+
+DROP TABLE IF EXISTS `grocery_version`;
+CREATE TABLE `grocery_version` (
+  `version` bigint(20) NOT NULL,
+  `purged` bigint(20) NOT NULL DEFAULT '0'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+INSERT INTO `grocery_version` VALUES (0, 0);
+
+--
+-- Table structure for table `grocery_tombstone`
+--
+
+DROP TABLE IF EXISTS `grocery_tombstone`;
+CREATE TABLE `grocery_tombstone` (
+  `id` int(11) NOT NULL,
+  `version` bigint(20) NOT NULL,
+  PRIMARY KEY (`id`,`version`),
+  KEY `tombstone_version_idx` (`version`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+--
+-- Table structure for table `grocery_change`
+--
+
+DROP TABLE IF EXISTS `grocery_change`;
+CREATE TABLE `grocery_change` (
+  `version` bigint(20) NOT NULL,
+  `id` int(11) NOT NULL,
+  `type` varchar(8) NOT NULL,
+  `itemName` varchar(20) NOT NULL,
+  `date` date DEFAULT NULL,
+  `quantity` int(11) NOT NULL,
+  `section` varchar(10) DEFAULT NULL,
+  `delta` int(11) NOT NULL,
+  PRIMARY KEY (`version`,`id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+--
+-- Table structure for table `grocery_client`
+--
+
+DROP TABLE IF EXISTS `grocery_client`;
+CREATE TABLE `grocery_client` (
+  `client` varchar(36) NOT NULL,
+  `version` bigint(20) NOT NULL,
+  `seen` bigint(20) NOT NULL,
+  PRIMARY KEY (`client`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
 
 /*!40101 SET SQL_MODE=@OLD_SQL_MODE */;
 /*!40014 SET FOREIGN_KEY_CHECKS=@OLD_FOREIGN_KEY_CHECKS */;
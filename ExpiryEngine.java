@@ -0,0 +1,221 @@
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.function.*;
+
+// keeps the groceries that can expire ordered by the day they are due, so
+// alerts only look at the front of the queue and a change costs O(log n)
+// instead of a scan of the fridge; the day a grocery is due is the day it
+// was bought plus the shelf life of its item
+public class ExpiryEngine {
+
+	// days an expiring item keeps when fridge.shelfLife.<item name> does not say
+	public static final int DEFAULT_SHELF_LIFE_DAYS = 7;
+
+	private static class Entry implements Comparable<Entry> {
+		final long dueDay;
+		final int id;
+		Grocery grocery;
+
+		Entry(long dueDay, Grocery grocery) {
+			this.dueDay = dueDay;
+			this.id = grocery.getId();
+			this.grocery = grocery;
+		}
+
+		public int compareTo(Entry other) {
+			int byDay = Long.compare(dueDay, other.dueDay);
+			return byDay != 0 ? byDay : Integer.compare(id, other.id);
+		}
+	}
+
+	private final ToIntFunction<Item> shelfLife;
+	private final Consumer<List<Grocery>> onDue;
+	private final Executor alertExecutor;
+
+	// groceries not yet alerted, soonest due first, and the ones alerted already
+	private final TreeSet<Entry> pending = new TreeSet<Entry>();
+	private final TreeSet<Entry> due = new TreeSet<Entry>();
+	private final Map<Integer, Entry> byId = new HashMap<Integer, Entry>();
+
+	private final Consumer<LocalDate> rolloverListener = today -> check();
+
+	// constructor; onDue gets the groceries that became due, through alertExecutor
+	public ExpiryEngine(ToIntFunction<Item> shelfLife, Consumer<List<Grocery>> onDue, Executor alertExecutor) {
+		this.shelfLife = shelfLife;
+		this.onDue = onDue;
+		this.alertExecutor = alertExecutor;
+	}
+
+	// shelf lives from config: fridge.shelfLife.<item name>, with spaces in
+	// the name escaped in the properties file, else fridge.shelfLife.default
+	public static ToIntFunction<Item> shelfLife(FridgeConfig config) {
+		int fallback = config.getInt("fridge.shelfLife.default", DEFAULT_SHELF_LIFE_DAYS);
+		return item -> config.getInt("fridge.shelfLife." + item.getName(), fallback);
+	}
+
+	// checks again at every midnight
+	public void start() {
+		FridgeClock.INSTANCE.addRolloverListener(rolloverListener);
+	}
+
+	public void stop() {
+		FridgeClock.INSTANCE.removeRolloverListener(rolloverListener);
+	}
+
+	// replaces what the engine holds with groceries, then alerts those due;
+	// only the expiring groceries are kept, so a stream of all of them,
+	// passed as stream::iterator, needs no list of them first. They are read
+	// before the engine is locked, so changes are not held up by a slow read
+	public void load(Iterable<Grocery> groceries) {
+		List<Grocery> expiring = new ArrayList<Grocery>();
+		for (Grocery grocery: groceries)
+		{
+			if (grocery.getItem().canExpire())
+				expiring.add(grocery);
+		}
+
+		synchronized (this)
+		{
+			pending.clear();
+			due.clear();
+			byId.clear();
+
+			for (Grocery grocery: expiring)
+				put(grocery);
+		}
+
+		check();
+	}
+
+	public void apply(GroceryChange change) {
+		synchronized (this)
+		{
+			if (change.getType() == GroceryChange.TYPE.DELETED)
+				remove(change.getId());
+			else
+				put(change.getGrocery());
+		}
+
+		check();
+	}
+
+	// the changes another client made, as pulled in by a poll
+	public void apply(GroceryChangeSet changes) {
+		synchronized (this)
+		{
+			for (Grocery grocery: changes.getChanged())
+				put(grocery);
+			for (int id: changes.getDeletedIds())
+				remove(id);
+		}
+
+		check();
+	}
+
+	// adds or replaces grocery; groceries that cannot expire are left out
+	public synchronized void put(Grocery grocery) {
+		Entry old = byId.get(grocery.getId());
+		long dueDay = dueDay(grocery);
+
+		// same purchase date and item: only the grocery held changes
+		if (old != null && old.dueDay == dueDay && old.grocery.getItem().canExpire() == grocery.getItem().canExpire())
+		{
+			old.grocery = grocery;
+			return;
+		}
+
+		remove(grocery.getId());
+		if (!grocery.getItem().canExpire())
+			return;
+
+		Entry entry = new Entry(dueDay, grocery);
+		byId.put(entry.id, entry);
+		pending.add(entry);
+	}
+
+	public synchronized void remove(int id) {
+		Entry entry = byId.remove(id);
+		if (entry != null && !pending.remove(entry))
+			due.remove(entry);
+	}
+
+	// alerts the pending groceries due by today; only the front of the
+	// queue is looked at
+	public void check() {
+		long today = FridgeClock.INSTANCE.todayEpochDay();
+		List<Grocery> alerts = new ArrayList<Grocery>();
+
+		synchronized (this)
+		{
+			while (!pending.isEmpty() && pending.first().dueDay <= today)
+			{
+				Entry entry = pending.pollFirst();
+				due.add(entry);
+				alerts.add(entry.grocery);
+			}
+		}
+
+		if (!alerts.isEmpty())
+			alertExecutor.execute(() -> onDue.accept(alerts));
+	}
+
+	// groceries due by now, soonest due first
+	public synchronized List<Grocery> getDue() {
+		List<Grocery> groceries = new ArrayList<Grocery>(due.size());
+		for (Entry entry: due)
+			groceries.add(entry.grocery);
+
+		return groceries;
+	}
+
+	// the next pending groceries, soonest due first
+	public synchronized List<Grocery> getUpcoming(int limit) {
+		List<Grocery> groceries = new ArrayList<Grocery>();
+		for (Entry entry: pending)
+		{
+			if (groceries.size() == limit)
+				break;
+			groceries.add(entry.grocery);
+		}
+
+		return groceries;
+	}
+
+	// day grocery is due, or null when it cannot expire
+	public LocalDate getDueDate(Grocery grocery) {
+		return grocery.getItem().canExpire() ? LocalDate.ofEpochDay(dueDay(grocery)) : null;
+	}
+
+	public synchronized int size() {
+		return byId.size();
+	}
+
+	private long dueDay(Grocery grocery) {
+		return grocery.getEpochDay() + shelfLife.applyAsInt(grocery.getItem());
+	}
+
+	public synchronized String toString() {
+		return "[ tracked: " + byId.size()
+			+ ", due: " + due.size()
+			+ ", next: " + (pending.isEmpty() ? "none" : LocalDate.ofEpochDay(pending.first().dueDay).toString())
+			+ " ]";
+	}
+
+	// To perform some quick tests
+	public static void main(String [] args) throws Exception {
+		ExpiryEngine engine = new ExpiryEngine(item -> item.getName().equals("Fish") ? 2 : 5,
+			groceries -> System.out.println("due: " + groceries), Runnable::run);
+
+		LocalDate today = FridgeClock.INSTANCE.today();
+		engine.load(Arrays.asList(
+			new Grocery(1, new Item("Fish", true), today.minusDays(3), FridgeDSC.SECTION.MEAT),
+			new Grocery(2, new Item("Beef", true), today.minusDays(1), FridgeDSC.SECTION.MEAT),
+			new Grocery(3, new Item("Milk", false), today.minusDays(30), FridgeDSC.SECTION.COOLING)));
+		System.out.println(engine + " upcoming: " + engine.getUpcoming(5));
+
+		engine.apply(GroceryChange.inserted(new Grocery(4, new Item("Beef", true), today.minusDays(6), FridgeDSC.SECTION.MEAT)));
+		engine.apply(GroceryChange.deleted(new Grocery(1, new Item("Fish", true), today.minusDays(3), FridgeDSC.SECTION.MEAT)));
+		System.out.println(engine + " due: " + engine.getDue());
+	}
+}
@@ -0,0 +1,148 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.*;
+import java.util.stream.*;
+
+// evaluates table filters off the JavaFX Application Thread: input is
+// debounced, an evaluation made stale by newer input is abandoned, and only
+// the result of the latest filter is delivered
+public class FilterPipeline {
+
+	// quiet time after the last keystroke before a filter runs (-Dfridge.filter.delay)
+	public static final long DEFAULT_DELAY_MILLIS = Long.getLong("fridge.filter.delay", 150);
+
+	// candidate count from which candidates are checked with a parallel stream
+	// (-Dfridge.filter.parallelThreshold)
+	public static final int DEFAULT_PARALLEL_THRESHOLD = Integer.getInteger("fridge.filter.parallelThreshold", 20000);
+
+	private final Function<GroceryFilter, ? extends Collection<Grocery>> candidates;
+	private final Executor resultExecutor;
+	private final long delayMillis;
+	private final int parallelThreshold;
+
+	// one daemon thread waits out the delay and runs the evaluations
+	private final ScheduledExecutorService scheduler;
+
+	// bumped by every submit and cancel; an evaluation only delivers while it is current
+	private final AtomicLong generation = new AtomicLong();
+	private ScheduledFuture<?> pending;
+
+	// timing of the last evaluation delivered
+	private volatile long lastNanos;
+	private volatile int lastCandidates;
+	private volatile int lastMatches;
+	private volatile boolean lastParallel;
+
+	// constructor; candidates gives the groceries worth checking for a filter,
+	// results are handed over through resultExecutor
+	public FilterPipeline(Function<GroceryFilter, ? extends Collection<Grocery>> candidates, Executor resultExecutor,
+		long delayMillis, int parallelThreshold) {
+		if (delayMillis < 0)
+			throw new IllegalArgumentException("[ERROR] Delay cannot be negative");
+		if (parallelThreshold < 1)
+			throw new IllegalArgumentException("[ERROR] Parallel threshold cannot be less than 1");
+
+		this.candidates = candidates;
+		this.resultExecutor = resultExecutor;
+		this.delayMillis = delayMillis;
+		this.parallelThreshold = parallelThreshold;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable ->
+		{
+			Thread thread = new Thread(runnable, "FilterPipeline");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	// constructor
+	public FilterPipeline(Function<GroceryFilter, ? extends Collection<Grocery>> candidates, Executor resultExecutor) {
+		this(candidates, resultExecutor, DEFAULT_DELAY_MILLIS, DEFAULT_PARALLEL_THRESHOLD);
+	}
+
+	// schedules filter to run once no newer filter arrived for the delay;
+	// onResult gets the matches unless a newer filter came in meanwhile
+	public synchronized void submit(GroceryFilter filter, Consumer<List<Grocery>> onResult) {
+		long gen = cancel();
+
+		pending = scheduler.schedule(() -> evaluate(gen, filter, onResult), delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	// drops the filter waiting or running, so nothing is delivered for it
+	public synchronized long cancel() {
+		if (pending != null)
+			pending.cancel(false);
+
+		return generation.incrementAndGet();
+	}
+
+	public void shutdown() {
+		cancel();
+		scheduler.shutdownNow();
+	}
+
+	public long getDelayMillis() {
+		return this.delayMillis;
+	}
+
+	public int getParallelThreshold() {
+		return this.parallelThreshold;
+	}
+
+	public long getLastEvaluationNanos() {
+		return this.lastNanos;
+	}
+
+	public int getLastCandidateCount() {
+		return this.lastCandidates;
+	}
+
+	public int getLastMatchCount() {
+		return this.lastMatches;
+	}
+
+	public boolean wasLastParallel() {
+		return this.lastParallel;
+	}
+
+	private void evaluate(long gen, GroceryFilter filter, Consumer<List<Grocery>> onResult) {
+		long start = System.nanoTime();
+
+		Collection<Grocery> checked = candidates.apply(filter);
+		if (generation.get() != gen)
+			return;
+
+		boolean parallel = checked.size() >= parallelThreshold;
+		Stream<Grocery> stream = parallel ? checked.parallelStream() : checked.stream();
+
+		// the generation check lets a stale scan run out quickly
+		List<Grocery> matches = stream
+			.filter(grocery -> generation.get() == gen && filter.matches(grocery))
+			.collect(Collectors.toList());
+
+		if (generation.get() != gen)
+			return;
+
+		lastNanos = System.nanoTime() - start;
+		FridgeMetrics.INSTANCE.record("filter.evaluate", lastNanos, matches.size(), false);
+		lastCandidates = checked.size();
+		lastMatches = matches.size();
+		lastParallel = parallel;
+
+		resultExecutor.execute(() ->
+		{
+			if (generation.get() == gen)
+				onResult.accept(matches);
+		});
+	}
+
+	public String toString() {
+		return "[ delay: " + this.delayMillis + " ms"
+			+ ", parallel threshold: " + this.parallelThreshold
+			+ ", last: " + String.format("%.3f", lastNanos / 1e6) + " ms"
+			+ ", candidates: " + lastCandidates
+			+ ", matches: " + lastMatches
+			+ (lastParallel ? ", parallel" : "")
+			+ " ]";
+	}
+}
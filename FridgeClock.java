@@ -0,0 +1,120 @@
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+// today's date for every "days ago" computation; reading it is a
+// comparison against the next midnight, without allocating, and the
+// listeners are told once that midnight has passed
+public class FridgeClock {
+
+	public static final FridgeClock INSTANCE = new FridgeClock(Clock.systemDefaultZone());
+
+	private final Clock clock;
+
+	private volatile LocalDate today;
+	private volatile long todayEpochDay;
+	private volatile long nextMidnightMillis;
+
+	private final List<Consumer<LocalDate>> listeners = new CopyOnWriteArrayList<Consumer<LocalDate>>();
+
+	// wakes up at midnight, so listeners hear of it even when no one asks for the date
+	private ScheduledExecutorService timer;
+
+	// constructor
+	public FridgeClock(Clock clock) {
+		this.clock = clock;
+		roll();
+	}
+
+	public LocalDate today() {
+		checkRollover();
+		return this.today;
+	}
+
+	public long todayEpochDay() {
+		checkRollover();
+		return this.todayEpochDay;
+	}
+
+	// days between epochDay and today, either way
+	public long daysAgo(long epochDay) {
+		return Math.abs(todayEpochDay() - epochDay);
+	}
+
+	// listener gets the new date on the first read or timer tick after
+	// midnight, on whichever thread that happens
+	public synchronized void addRolloverListener(Consumer<LocalDate> listener) {
+		listeners.add(listener);
+
+		if (timer == null)
+		{
+			timer = Executors.newSingleThreadScheduledExecutor(runnable ->
+			{
+				Thread thread = new Thread(runnable, "FridgeClock");
+				thread.setDaemon(true);
+				return thread;
+			});
+			scheduleTick();
+		}
+	}
+
+	public synchronized void removeRolloverListener(Consumer<LocalDate> listener) {
+		listeners.remove(listener);
+
+		if (listeners.isEmpty() && timer != null)
+		{
+			timer.shutdownNow();
+			timer = null;
+		}
+	}
+
+	private synchronized void scheduleTick() {
+		if (timer == null)
+			return;
+
+		long delay = Math.max(0, nextMidnightMillis - clock.millis()) + 1;
+		timer.schedule(() ->
+		{
+			checkRollover();
+			scheduleTick();
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	private void checkRollover() {
+		if (clock.millis() >= nextMidnightMillis)
+			rollover();
+	}
+
+	private void rollover() {
+		LocalDate rolled;
+
+		synchronized (this)
+		{
+			if (clock.millis() < nextMidnightMillis)
+				return;
+
+			LocalDate old = today;
+			roll();
+			if (today.equals(old))
+				return;
+
+			rolled = today;
+		}
+
+		for (Consumer<LocalDate> listener: listeners)
+			listener.accept(rolled);
+	}
+
+	private void roll() {
+		LocalDate now = LocalDate.now(clock);
+
+		todayEpochDay = now.toEpochDay();
+		nextMidnightMillis = now.plusDays(1).atStartOfDay(clock.getZone()).toInstant().toEpochMilli();
+		today = now;
+	}
+
+	public String toString() {
+		return "[ today: " + this.today + ", next midnight: " + Instant.ofEpochMilli(this.nextMidnightMillis) + " ]";
+	}
+}
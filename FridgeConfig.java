@@ -0,0 +1,107 @@
+import java.io.*;
+import java.util.*;
+
+// the settings the application connects with, read from fridge.properties
+// (or the file named by -Dfridge.config) so they no longer need source
+// edits; a system property with the same key overrides the file
+//
+// fridge.backend   mysql (default) or h2
+// fridge.url       JDBC url; for h2 defaults to a database in fridge.h2.path
+// fridge.user      database user
+// fridge.password  database password
+// fridge.h2.path   files the h2 database is kept in (default: ./fridge)
+// fridge.bootstrap creates the schema from fridge.schema when it is missing (default: true for h2)
+// fridge.schema    script the schema is created from (default: CreateDatabaseScript.sql)
+// fridge.pool.*    pool settings, see FridgeDSC
+public class FridgeConfig {
+
+	public static final String DEFAULT_FILE = "fridge.properties";
+	public static final String DEFAULT_SCHEMA = "CreateDatabaseScript.sql";
+	public static final String DEFAULT_H2_PATH = "./fridge";
+
+	private final Properties properties;
+
+	// constructor
+	public FridgeConfig(Properties properties) {
+		this.properties = properties;
+	}
+
+	// the settings in the config file, if there is one, with the fridge.*
+	// system properties on top
+	public static FridgeConfig load() throws IOException {
+		Properties properties = new Properties();
+
+		File file = new File(System.getProperty("fridge.config", DEFAULT_FILE));
+		if (file.isFile())
+		{
+			try (Reader reader = new FileReader(file))
+			{
+				properties.load(reader);
+			}
+		}
+		else if (System.getProperty("fridge.config") != null)
+			throw new FileNotFoundException("[ERROR] Config file " + file + " does not exist");
+
+		for (String key: System.getProperties().stringPropertyNames())
+		{
+			if (key.startsWith("fridge."))
+				properties.setProperty(key, System.getProperty(key));
+		}
+
+		return new FridgeConfig(properties);
+	}
+
+	public String get(String key, String defaultValue) {
+		String value = properties.getProperty(key);
+		return value != null ? value.trim() : defaultValue;
+	}
+
+	public int getInt(String key, int defaultValue) {
+		String value = get(key, null);
+		return value != null ? Integer.parseInt(value) : defaultValue;
+	}
+
+	public long getLong(String key, long defaultValue) {
+		String value = get(key, null);
+		return value != null ? Long.parseLong(value) : defaultValue;
+	}
+
+	public boolean getBoolean(String key, boolean defaultValue) {
+		String value = get(key, null);
+		return value != null ? Boolean.parseBoolean(value) : defaultValue;
+	}
+
+	// the backend named by fridge.backend, set up from the other settings
+	public StorageBackend getBackend() {
+		String name = get("fridge.backend", MySQLBackend.NAME).toLowerCase();
+		String user = get("fridge.user", "");
+		String password = get("fridge.password", "");
+
+		switch (name)
+		{
+			case MySQLBackend.NAME:
+				return new MySQLBackend(get("fridge.url", "jdbc:mysql://"), user, password, isBootstrap());
+			case H2Backend.NAME:
+				return new H2Backend(get("fridge.url", H2Backend.fileUrl(get("fridge.h2.path", DEFAULT_H2_PATH))),
+					user, password);
+			default:
+				throw new IllegalArgumentException("[ERROR] Unknown storage backend: " + name);
+		}
+	}
+
+	// an embedded database starts out empty, so it is bootstrapped by default
+	public boolean isBootstrap() {
+		return getBoolean("fridge.bootstrap", H2Backend.NAME.equalsIgnoreCase(get("fridge.backend", MySQLBackend.NAME)));
+	}
+
+	public File getSchema() {
+		return new File(get("fridge.schema", DEFAULT_SCHEMA));
+	}
+
+	public String toString() {
+		return "[ backend: " + get("fridge.backend", MySQLBackend.NAME)
+			+ ", url: " + get("fridge.url", "(default)")
+			+ ", bootstrap: " + isBootstrap()
+			+ " ]";
+	}
+}
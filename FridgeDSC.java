@@ -1,17 +1,30 @@
 import java.sql.*;
 import java.util.*;
-import java.io.File;
-import java.io.PrintWriter;
-import java.util.Scanner;
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.time.LocalDate;
-import java.time.Duration;
 import java.time.format.DateTimeFormatter;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import java.util.stream.*;
 
 public class FridgeDSC {
 
 	// the date format we will be using across the application
 	public static final String DATE_FORMAT = "dd/MM/yyyy";
 
+	// formatters are immutable and thread safe, so one serves every grocery
+	public static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern(DATE_FORMAT);
+
+	// "N days ago" texts up to this many days are made once and shared
+	public static final int DAYS_AGO_CACHED = 3660;
+	private static final String[] daysAgoTexts = new String[DAYS_AGO_CACHED];
+
+	// maximum number of items kept in memory by the item cache
+	public static final int ITEM_CACHE_CAPACITY = 1024;
+
 	/*
 		FREEZER, // freezing cold
 		MEAT, // MEAT cold
@@ -27,22 +40,90 @@ public class FridgeDSC {
 		CRISPER
 	};
 
-	private static Connection connection;
-	private static Statement statement;
-	private static PreparedStatement preparedStatement;
+	// columns a page of groceries can be ordered by; ties are broken by id,
+	// which makes every position in the order unique for keyset paging
+	public enum SORT_COLUMN {
+		ID("g.id"),
+		ITEM("g.itemName"),
+		QUANTITY("g.quantity"),
+		SECTION("g.section"),
+		DATE("g.date");
+
+		private final String column;
+
+		SORT_COLUMN(String column) {
+			this.column = column;
+		}
+	};
+
+	// groceries joined with their items, mapped by mapGrocery
+	private static final String GROCERY_QUERY =
+		"SELECT g.id, g.itemName, g.date, g.quantity, g.section, i.expires " +
+		"FROM grocery g JOIN item i ON g.itemName = i.name";
+
+	// pool settings, overridable with -Dfridge.pool.size, -Dfridge.pool.borrowTimeout
+	// and -Dfridge.pool.statementCacheSize, or the same keys in fridge.properties
+	public static final int POOL_SIZE = Integer.getInteger("fridge.pool.size", ConnectionPool.DEFAULT_SIZE);
+	public static final long POOL_BORROW_TIMEOUT_MILLIS =
+		Long.getLong("fridge.pool.borrowTimeout", ConnectionPool.DEFAULT_BORROW_TIMEOUT_MILLIS);
+	public static final int STATEMENT_CACHE_SIZE =
+		Integer.getInteger("fridge.pool.statementCacheSize", StatementCache.DEFAULT_SIZE);
+
+	// rows sent per JDBC batch by the bulk methods, overridable with -Dfridge.batchSize
+	public static final int BATCH_SIZE = Integer.getInteger("fridge.batchSize", 500);
+
+	// rows fetched per round trip by the streaming methods, overridable with -Dfridge.fetchSize
+	public static final int FETCH_SIZE = Integer.getInteger("fridge.fetchSize", 1000);
+
+	// chars buffered by exports before they are written to the file channel
+	public static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+
+	// every method borrows its own connection, so the controller can be
+	// shared between threads
+	private static volatile ConnectionPool pool;
+
+	// decrements a grocery only while it keeps at least Grocery.MINIMUM_QUANTITY,
+	// so the affected row count alone says whether it worked
+	private static final String USE_COMMAND =
+		"UPDATE grocery SET quantity = quantity - ?, version = ? WHERE id = ? AND quantity >= ?";
+
+	// every mutation takes the next change version from the single row of
+	// grocery_version; the row stays locked until the mutation commits, so
+	// versions become visible in the order they were handed out
+	private static final String NEXT_VERSION_COMMAND = "UPDATE grocery_version SET version = version + 1";
+	private static final String VERSION_QUERY = "SELECT version FROM grocery_version";
+
+	// tombstones up to grocery_version.purged are gone, so a client behind
+	// it is stale; a client not seen for this long, overridable with
+	// -Dfridge.sync.clientTimeout, no longer holds tombstones back
+	private static final String PURGED_QUERY = "SELECT version, purged FROM grocery_version";
+	public static final long SYNC_CLIENT_TIMEOUT_MILLIS = Long.getLong("fridge.sync.clientTimeout", 24 * 60 * 60 * 1000L);
+
+	// the groceries changed in a range of versions, mapped like GROCERY_QUERY
+	private static final String CHANGED_QUERY =
+		"SELECT g.id, g.itemName, g.date, g.quantity, g.section, i.expires, g.version " +
+		"FROM grocery g JOIN item i ON g.itemName = i.name " +
+		"WHERE g.version > ? AND g.version <= ? ORDER BY g.version";
+
+	// every mutation also records what it did to each grocery in
+	// grocery_change, with the quantity delta, so totals kept by a client
+	// move by exactly the changes after the version they were added up at
+	private static final String LOG_COMMAND =
+		"INSERT INTO grocery_change (version, id, type, itemName, date, quantity, section, delta) VALUES(?, ?, ?, ?, ?, ?, ?, ?)";
+	private static final String LOGGED_QUERY =
+		"SELECT c.id, c.itemName, c.date, c.quantity, c.section, i.expires, c.version, c.type, c.delta " +
+		"FROM grocery_change c JOIN item i ON c.itemName = i.name " +
+		"WHERE c.version > ? AND c.version <= ? ORDER BY c.version, c.id";
+
+	// items by name, shared by every grocery mapping path
+	private static final ItemCache itemCache = new ItemCache(ITEM_CACHE_CAPACITY);
 	
-	// connection to database
+	// connection to database, with the storage backend and settings read
+	// by FridgeConfig
 	public static void connect() throws SQLException {
 		try 
 		{
-			Class.forName("com.mysql.jdbc.Driver");
-			//strings below should have correct login information, left as blank for sample  
-			String url = "jdbc:mysql://";
-			String user = "";
-			String password = "";
-
-			connection = DriverManager.getConnection(url, user, password);
-			statement = connection.createStatement();
+			connect(FridgeConfig.load());
   		} 
 		catch(Exception e) 
 		{
@@ -50,212 +131,1557 @@ public class FridgeDSC {
 			e.printStackTrace();
 		}		
 	}
+
+	// connection to the backend config names; an empty database is given
+	// the tables and sample rows of the schema script when config bootstraps
+	public static void connect(FridgeConfig config) throws Exception {
+		StorageBackend backend = config.getBackend();
+		Class.forName(backend.getDriverClassName());
+		SlowQueryLog.INSTANCE.setThresholdMillis(config.getLong("fridge.slowQuery.threshold", SlowQueryLog.DEFAULT_THRESHOLD_MILLIS));
+
+		connect(new ConnectionPool(backend.getUrl(), backend.getConnectionProperties(),
+			config.getInt("fridge.pool.size", POOL_SIZE),
+			config.getLong("fridge.pool.borrowTimeout", POOL_BORROW_TIMEOUT_MILLIS),
+			config.getInt("fridge.pool.statementCacheSize", STATEMENT_CACHE_SIZE)));
+
+		if (config.isBootstrap())
+		{
+			try (PooledConnection conn = borrow())
+			{
+				if (!SchemaScript.exists(conn.getConnection()))
+					SchemaScript.read(config.getSchema()).run(conn.getConnection(), backend);
+			}
+		}
+	}
+
+	// connection to the database at url, with the driver already loaded;
+	// replaces the pool of an earlier connect
+	public static void connect(String url, Properties info) throws SQLException {
+		connect(new ConnectionPool(url, info, POOL_SIZE, POOL_BORROW_TIMEOUT_MILLIS, STATEMENT_CACHE_SIZE));
+	}
+
+	private static void connect(ConnectionPool connected) throws SQLException {
+		// opens the first connection now so bad settings are reported on connect
+		try
+		{
+			connected.borrow().close();
+		}
+		catch (SQLException exception)
+		{
+			connected.close();
+			throw exception;
+		}
+
+		disconnect();
+		pool = connected;
+	}
 	
 	// disconnection to database
 	public static void disconnect() throws SQLException {
-		if(preparedStatement != null) preparedStatement.close();
-		if(statement != null) statement.close();
-		if(connection != null) connection.close();
+		if(pool != null) pool.close();
 	}
 
+	// stops the queries thread is running, which then fail
+	public static int cancel(Thread thread) {
+		return pool != null ? pool.cancel(thread) : 0;
+	}
 
-	// search for item within database by item name
-	public Item searchItem(String name) throws Exception {
-		String queryString = "SELECT * FROM item WHERE name = ?";
-		
-		preparedStatement = connection.prepareStatement(queryString);
-		preparedStatement.setString(1, name);
-		ResultSet rs = preparedStatement.executeQuery();
+	// a public call of the controller, as measured runs it
+	private interface Call<T> {
+		T run() throws Exception;
+	}
+
+	// how deep each thread is in measured calls; a public method calling
+	// another one is recorded once, under its own name
+	private static final ThreadLocal<int[]> measuring = ThreadLocal.withInitial(() -> new int[1]);
+
+	// runs call and records the time it took, the rows it returned and
+	// whether it failed in FridgeMetrics under "dsc." + operation, so every
+	// caller of the controller is measured, whichever thread it runs on
+	private static <T> T measured(String operation, Call<T> call) throws Exception {
+		return measured(operation, call, FridgeDSC::rows);
+	}
 
-		Item item = null;
+	// as measured, with rows telling the rows of a result rows() cannot
+	private static <T> T measured(String operation, Call<T> call, ToLongFunction<T> rows) throws Exception {
+		int[] depth = measuring.get();
+		if (depth[0] > 0)
+			return call.run();
 
-		//checks if item exists
-		if (rs.next()) 
+		depth[0]++;
+		long start = System.nanoTime();
+		try
+		{
+			T result = call.run();
+			FridgeMetrics.INSTANCE.record("dsc." + operation, System.nanoTime() - start, rows.applyAsLong(result), false);
+			return result;
+		}
+		catch (Exception exception)
 		{
+			FridgeMetrics.INSTANCE.record("dsc." + operation, System.nanoTime() - start, 0, true);
+			throw exception;
+		}
+		finally
+		{
+			depth[0]--;
+		}
+	}
 
-			boolean expires = rs.getBoolean(2);
-			item = new Item(name, expires);
-		}	
+	// rows a call returned: the size of a list or change set, the count of
+	// a call that returns how many rows it moved, else one row for a result
+	// and none for null
+	private static long rows(Object result) {
+		if (result instanceof Collection)
+			return ((Collection<?>) result).size();
+		if (result instanceof GroceryChangeSet)
+			return ((GroceryChangeSet) result).size();
+		if (result instanceof GrocerySnapshot)
+			return ((GrocerySnapshot) result).size();
+		if (result instanceof Number)
+			return ((Number) result).longValue();
 
-		return item;
+		return result != null ? 1 : 0;
 	}
 
-	// search for grocery within database by ID
-	public Grocery searchGrocery(int id) throws Exception {
-		DateTimeFormatter dtf = DateTimeFormatter.ofPattern(DATE_FORMAT);
-		String queryString = "SELECT * FROM grocery WHERE id = ?";
+	// work inTransaction runs on the connection it borrowed
+	private interface Transaction<T> {
+		T run(PooledConnection conn) throws Exception;
+	}
 
-		preparedStatement = connection.prepareStatement(queryString);
-		String diffId = new Integer(id).toString();
-		preparedStatement.setString(1, diffId);
-		ResultSet rs = preparedStatement.executeQuery();
-		
-		Grocery grocery = null;
+	// runs work in one transaction on a pooled connection: commits what it
+	// did when it returns and rolls it back when it throws; a rollback that
+	// fails is added to the exception thrown, and the connection goes back
+	// to the pool in autocommit either way
+	private static <T> T inTransaction(Transaction<T> work) throws Exception {
+		return inTransaction(Connection.TRANSACTION_NONE, work);
+	}
 
-		//checks if grocery exists
-		if (rs.next()) 
+	// the same at an isolation level, Connection.TRANSACTION_NONE keeping
+	// the connection's own; the connection gets its own back afterwards
+	private static <T> T inTransaction(int isolation, Transaction<T> work) throws Exception {
+		try (PooledConnection conn = borrow())
 		{
-
-			LocalDate date = LocalDate.parse(rs.getString(3), dtf);
-			int quantity = rs.getInt(4);
-			FridgeDSC.SECTION section = SECTION.valueOf(rs.getString(5).toUpperCase());
-			
-			if(searchItem(rs.getString(2)) != null)
+			Connection connection = conn.getConnection();
+			int previous = Connection.TRANSACTION_NONE;
+			if (isolation != Connection.TRANSACTION_NONE)
 			{
-				Item item = searchItem(rs.getString(2));
-				grocery = new Grocery(id, item, date, quantity, section);
+				previous = connection.getTransactionIsolation();
+				connection.setTransactionIsolation(isolation);
 			}
+			connection.setAutoCommit(false);
 
+			try
+			{
+				T result = work.run(conn);
+				connection.commit();
+				return result;
+			}
+			catch (Exception exception)
+			{
+				try
+				{
+					connection.rollback();
+				}
+				catch (SQLException rollbackFailure)
+				{
+					exception.addSuppressed(rollbackFailure);
+				}
+				throw exception;
+			}
+			finally
+			{
+				try
+				{
+					connection.setAutoCommit(true);
+					if (isolation != Connection.TRANSACTION_NONE)
+						connection.setTransactionIsolation(previous);
+				}
+				catch (SQLException exception)
+				{
+					// the pool checks the connection before lending it again
+					System.out.println("ERROR: " + exception);
+				}
+			}
 		}
+	}
 
-		return grocery;
+	// borrows a connection from the pool; to be closed by the caller
+	private static PooledConnection borrow() throws SQLException {
+		if (pool == null)
+			throw new SQLException("[ERROR] Not connected to the database");
+
+		return pool.borrow();
 	}
 
-	// pulls all items from database
+
+	// search for item by item name, served from the item cache when possible;
+	// a miss always asks the database, as another client may have added it
+	public Item searchItem(String name) throws Exception {
+		return measured("searchItem", () ->
+		{
+			if (!itemCache.isWarm())
+			{
+				warmItemCache();
+			}
+
+			Item cached = itemCache.get(name);
+			if (cached != null)
+			{
+				return cached;
+			}
+
+			String queryString = "SELECT * FROM item WHERE name = ?";
+			Item item = null;
+
+			try (PooledConnection conn = borrow();
+				PreparedStatement ps = conn.prepareStatement(queryString))
+			{
+				ps.setString(1, name);
+
+				try (ResultSet rs = ps.executeQuery())
+				{
+					//checks if item exists
+					if (rs.next()) 
+					{
+						boolean expires = rs.getBoolean(2);
+						item = new Item(name, expires);
+						itemCache.put(item);
+					}
+				}
+			}
+
+			return item;
+		});
+	}
+
+	// search for grocery within database by ID
+	public Grocery searchGrocery(int id) throws Exception {
+		return measured("searchGrocery", () ->
+		{
+			String queryString = GROCERY_QUERY + " WHERE g.id = ?";
+
+			Grocery grocery = null;
+
+			try (PooledConnection conn = borrow();
+				PreparedStatement ps = conn.prepareStatement(queryString))
+			{
+				ps.setInt(1, id);
+
+				try (ResultSet rs = ps.executeQuery())
+				{
+					//checks if grocery exists; the inner join drops groceries whose item is missing
+					if (rs.next()) 
+					{
+						grocery = mapGrocery(rs, new HashMap<String, Item>());
+					}
+				}
+			}
+
+			return grocery;
+		});
+	}
+
+	// pulls all items from database, refreshing the item cache on the way
 	public List<Item> getAllItems() throws Exception {
+		return measured("getAllItems", () ->
+		{
+			List<Item> items = loadItems();
+			itemCache.load(items);
+
+			return items;
+		});
+	}
+
+	// bulk loads the whole item table into the item cache
+	public void warmItemCache() throws Exception {
+		measured("warmItemCache", () ->
+		{
+			itemCache.load(loadItems());
+
+			return null;
+		});
+	}
+
+	// drops a single item from the item cache, to be called when it changes
+	public void invalidateItem(String name) {
+		itemCache.invalidate(name);
+	}
+
+	// drops every item from the item cache; the next lookup reloads them in bulk
+	public void invalidateItems() {
+		itemCache.invalidateAll();
+	}
+
+	public long getItemCacheHits() {
+		return itemCache.getHits();
+	}
+
+	public long getItemCacheMisses() {
+		return itemCache.getMisses();
+	}
+
+	public long getStatementCacheHits() {
+		return pool != null ? pool.getStatementStats().getHits() : 0;
+	}
+
+	public long getStatementCacheMisses() {
+		return pool != null ? pool.getStatementStats().getMisses() : 0;
+	}
+
+	public double getStatementCacheHitRate() {
+		return pool != null ? pool.getStatementStats().getHitRate() : 0;
+	}
+
+	private List<Item> loadItems() throws Exception {
 		String queryString = "SELECT * FROM item";
-		
-		ResultSet rs = statement.executeQuery(queryString);
 		List<Item> items = new ArrayList<Item>();
 
-		while(rs.next())
+		try (PooledConnection conn = borrow();
+			PreparedStatement ps = conn.prepareStatement(queryString);
+			ResultSet rs = ps.executeQuery())
 		{
-			String name = rs.getString(1);
-			boolean expires = rs.getBoolean(2);
-			items.add(new Item(name, expires));
+			while(rs.next())
+			{
+				String name = rs.getString(1);
+				boolean expires = rs.getBoolean(2);
+				items.add(new Item(name, expires));
+			}
 		}
 		
 		return items;
 	}
 
-	// pulls all groceries from database
+	// pulls all groceries from database with their items in a single query
 	public List<Grocery> getAllGroceries() throws Exception {
-		DateTimeFormatter dtf = DateTimeFormatter.ofPattern(DATE_FORMAT);
-		String queryString = "SELECT * FROM grocery";
-				
-		ResultSet rs = statement.executeQuery(queryString);
-		
+		return measured("getAllGroceries", () ->
+		{
+			List<Grocery> groceries = new ArrayList<Grocery>();
+			Map<String, Item> items = new HashMap<String, Item>();
+
+			try (PooledConnection conn = borrow();
+				PreparedStatement ps = conn.prepareStatement(GROCERY_QUERY);
+				ResultSet rs = ps.executeQuery())
+			{
+				while(rs.next())
+				{
+					groceries.add(mapGrocery(rs, items));
+				}
+			}
+
+			return groceries;
+		});
+	}
+
+	// the groceries as they come from the database, in id order, without a
+	// list of them all; the stream holds a pooled connection and a streaming
+	// result set until it is closed, so it is meant for try-with-resources
+	public Stream<Grocery> streamGroceries() throws Exception {
+		return streamGroceries(GroceryFilter.NONE, FETCH_SIZE);
+	}
+
+	public Stream<Grocery> streamGroceries(GroceryFilter filter, int fetchSize) throws Exception {
+		List<String> conditions = new ArrayList<String>();
+		List<Object> params = new ArrayList<Object>();
+		if (!appendFilter(conditions, params, filter))
+			return Stream.empty();
+
+		Map<String, Item> items = new HashMap<String, Item>();
+		return stream("streamGroceries", GROCERY_QUERY + where(conditions) + " ORDER BY g.id", params, fetchSize,
+			rs -> mapGrocery(rs, items));
+	}
+
+	// the items as they come from the database, without refreshing the item cache
+	public Stream<Item> streamItems() throws Exception {
+		return streamItems(FETCH_SIZE);
+	}
+
+	public Stream<Item> streamItems(int fetchSize) throws Exception {
+		return stream("streamItems", "SELECT name, expires FROM item ORDER BY name", new ArrayList<Object>(), fetchSize,
+			rs -> new Item(rs.getString(1), rs.getBoolean(2)));
+	}
+
+	// maps a row of a result set; may throw like the JDBC calls it makes
+	private interface RowMapper<T> {
+		T map(ResultSet rs) throws Exception;
+	}
+
+	// a sequential stream over the rows of a streaming query; closing the
+	// stream closes the result set and statement and returns the connection
+	// to the pool, and a failure to read a row is thrown as an
+	// IllegalStateException holding the cause. The time from opening to
+	// closing and the rows read are recorded like measured does, on close
+	private <T> Stream<T> stream(String operation, String queryString, List<Object> params, int fetchSize, RowMapper<T> mapper) throws Exception {
+		boolean measure = measuring.get()[0] == 0;
+		long start = System.nanoTime();
+		long[] read = new long[1];
+		boolean[] failed = new boolean[1];
+
+		PooledConnection conn = borrow();
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+
+		try
+		{
+			ps = conn.prepareStreaming(queryString, fetchSize);
+			for (int i = 0; i < params.size(); i++)
+				ps.setObject(i + 1, params.get(i));
+			rs = ps.executeQuery();
+		}
+		catch (Exception exception)
+		{
+			closeQuietly(rs, ps, conn);
+			if (measure)
+				FridgeMetrics.INSTANCE.record("dsc." + operation, System.nanoTime() - start, 0, true);
+			throw exception;
+		}
+
+		ResultSet rows = rs;
+		Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+			public boolean tryAdvance(Consumer<? super T> action) {
+				try
+				{
+					if (!rows.next())
+						return false;
+
+					T row = mapper.map(rows);
+					read[0]++;
+					action.accept(row);
+					return true;
+				}
+				catch (RuntimeException exception)
+				{
+					failed[0] = true;
+					throw exception;
+				}
+				catch (Exception exception)
+				{
+					failed[0] = true;
+					throw new IllegalStateException("[ERROR] Could not read the next row: " + exception.getMessage(), exception);
+				}
+			}
+		};
+
+		PreparedStatement statement = ps;
+		return StreamSupport.stream(spliterator, false).onClose(() ->
+		{
+			closeQuietly(rows, statement, conn);
+			if (measure)
+				FridgeMetrics.INSTANCE.record("dsc." + operation, System.nanoTime() - start, read[0], failed[0]);
+		});
+	}
+
+	private static void closeQuietly(ResultSet rs, PreparedStatement ps, PooledConnection conn) {
+		try
+		{
+			if (rs != null)
+				rs.close();
+			if (ps != null)
+				ps.close();
+		}
+		catch (SQLException exception)
+		{
+			System.out.println("ERROR: " + exception);
+		}
+		finally
+		{
+			conn.close();
+		}
+	}
+
+	// pulls the groceries bought between from and to, both inclusive, optionally
+	// in one section only; served by the (section, date) index
+	public List<Grocery> getGroceriesBoughtBetween(SECTION section, LocalDate from, LocalDate to) throws Exception {
+		return measured("getGroceriesBoughtBetween", () ->
+		{
+			String queryString = GROCERY_QUERY + " WHERE g.date BETWEEN ? AND ?";
+			List<Object> params = new ArrayList<Object>();
+			params.add(java.sql.Date.valueOf(from));
+			params.add(java.sql.Date.valueOf(to));
+
+			if (section != null)
+			{
+				queryString += " AND g.section = ?";
+				params.add(section.toString());
+			}
+
+			return queryGroceries(queryString, params);
+		});
+	}
+
+	// writes every grocery to file as CSV, in id order; rows are streamed
+	// from the database and written as they arrive, so memory stays flat
+	// however many there are; returns the number of rows written
+	public long exportGroceries(Path file) throws Exception {
+		return measured("exportGroceries", () ->
+		{
+			try (FileChannel channel = FileChannel.open(file,
+					StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+				Writer writer = new BufferedWriter(
+					Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1), EXPORT_BUFFER_SIZE))
+			{
+				return exportGroceries(writer);
+			}
+		});
+	}
+
+	public long exportGroceries(Writer writer) throws Exception {
+		return measured("exportGroceries", () ->
+		{
+			GroceryCsv csv = new GroceryCsv();
+			long rows = 0;
+
+			writer.write(GroceryCsv.header());
+			writer.write('\n');
+
+			try (PooledConnection conn = borrow();
+				PreparedStatement ps = conn.prepareStreaming(GROCERY_QUERY + " ORDER BY g.id", FETCH_SIZE);
+				ResultSet rs = ps.executeQuery())
+			{
+				while (rs.next())
+				{
+					writer.write(csv.format(rs.getInt(1), rs.getString(2), getLocalDate(rs, 3), rs.getInt(4),
+						rs.getString(5).toUpperCase(), rs.getBoolean(6)));
+					writer.write('\n');
+					rows++;
+				}
+			}
+
+			writer.flush();
+			return rows;
+		});
+	}
+
+	// adds the groceries in a CSV file, as written by exportGroceries or a
+	// manifest with item, quantity, section and optionally date columns; the
+	// file is read a line at a time and every batchSize lines are added in
+	// a transaction of their own, so a bad line stops the import with the
+	// batches before it committed; returns the number of groceries added
+	public long importGroceries(Path file, int batchSize) throws Exception {
+		return measured("importGroceries", () ->
+		{
+			try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+			{
+				return importGroceries(reader, batchSize);
+			}
+		});
+	}
+
+	public long importGroceries(BufferedReader reader, int batchSize) throws Exception {
+		return measured("importGroceries", () ->
+		{
+			if (batchSize < 1)
+				throw new Exception("[ERROR] Batch size cannot be less than 1");
+
+			// every name is checked against the items loaded once up front
+			Set<String> items = new HashSet<String>();
+			for (Item item: getAllItems())
+				items.add(item.getName());
+
+			GroceryCsv csv = new GroceryCsv();
+			String header = csv.readRecord(reader);
+			if (header == null)
+				return 0L;
+			csv.readHeader(header);
+
+			List<GroceryLine> batch = new ArrayList<GroceryLine>(batchSize);
+			long added = 0;
+
+			// a record spans several lines when a quoted field holds line breaks
+			String text;
+			while ((text = csv.readRecord(reader)) != null)
+			{
+				if (text.trim().isEmpty())
+					continue;
+
+				try
+				{
+					batch.add(csv.parse(text, items));
+				}
+				catch (Exception exception)
+				{
+					throw new Exception("[ERROR] Line " + csv.getRecordLine() + ": " + exception.getMessage().replaceFirst("^\\[ERROR\\] ", "")
+						+ " (" + added + " groceries were added before it)", exception);
+				}
+
+				if (batch.size() == batchSize)
+				{
+					added += addGroceries(batch, batchSize).size();
+					batch.clear();
+				}
+			}
+
+			if (!batch.isEmpty())
+				added += addGroceries(batch, batchSize).size();
+
+			return added;
+		});
+	}
+
+	// the change version the grocery table is at; a client that loaded its
+	// groceries after reading it gets everything newer from changesSince
+	public long getChangeVersion() throws Exception {
+		// the one row read holds a version, not a count
+		return measured("getChangeVersion", () ->
+		{
+			try (PooledConnection conn = borrow())
+			{
+				return readVersion(conn);
+			}
+		}, version -> 1);
+	}
+
+	// the groceries changed and deleted after version, up to the version the
+	// returned set holds; costs what changed rather than the table size, as
+	// both lookups go through a version index
+	public GroceryChangeSet changesSince(long version) throws Exception {
+		return measured("changesSince", () ->
+		{
+			try (PooledConnection conn = borrow())
+			{
+				// read first: every mutation up to it has committed, so nothing
+				// up to it can still turn up later
+				long current;
+				long purged;
+				try (PreparedStatement ps = conn.prepareStatement(PURGED_QUERY);
+					ResultSet rs = ps.executeQuery())
+				{
+					if (!rs.next())
+						throw new Exception("[ERROR] Table grocery_version has no row");
+
+					current = rs.getLong(1);
+					purged = rs.getLong(2);
+				}
+
+				if (version < purged)
+					return GroceryChangeSet.stale(current);
+
+				// latest version seen per id, as a deleted id can be handed out again
+				Map<Integer, Long> latest = new HashMap<Integer, Long>();
+				Map<Integer, Grocery> changed = new LinkedHashMap<Integer, Grocery>();
+				Set<Integer> deleted = new LinkedHashSet<Integer>();
+
+				if (current <= version)
+					return new GroceryChangeSet(version, new ArrayList<Grocery>(), new ArrayList<Integer>());
+
+				try (PreparedStatement ps = conn.prepareStatement(CHANGED_QUERY))
+				{
+					ps.setLong(1, version);
+					ps.setLong(2, current);
+
+					try (ResultSet rs = ps.executeQuery())
+					{
+						Map<String, Item> items = new HashMap<String, Item>();
+						while (rs.next())
+						{
+							Grocery grocery = mapGrocery(rs, items);
+							latest.put(grocery.getId(), rs.getLong(7));
+							changed.put(grocery.getId(), grocery);
+						}
+					}
+				}
+
+				try (PreparedStatement ps = conn.prepareStatement(
+					"SELECT id, version FROM grocery_tombstone WHERE version > ? AND version <= ? ORDER BY version"))
+				{
+					ps.setLong(1, version);
+					ps.setLong(2, current);
+
+					try (ResultSet rs = ps.executeQuery())
+					{
+						while (rs.next())
+						{
+							int id = rs.getInt(1);
+							Long seen = latest.get(id);
+							if (seen != null && seen > rs.getLong(2))
+								continue;
+
+							latest.put(id, rs.getLong(2));
+							changed.remove(id);
+							deleted.add(id);
+						}
+					}
+				}
+
+				List<GroceryChange> deltas = new ArrayList<GroceryChange>();
+				try (PreparedStatement ps = conn.prepareStatement(LOGGED_QUERY))
+				{
+					ps.setLong(1, version);
+					ps.setLong(2, current);
+
+					try (ResultSet rs = ps.executeQuery())
+					{
+						Map<String, Item> items = new HashMap<String, Item>();
+						while (rs.next())
+						{
+							deltas.add(new GroceryChange(GroceryChange.TYPE.valueOf(rs.getString(8)), mapGrocery(rs, items),
+								rs.getInt(9), rs.getLong(7)));
+						}
+					}
+				}
+
+				return new GroceryChangeSet(current, new ArrayList<Grocery>(changed.values()), new ArrayList<Integer>(deleted),
+					latest, deltas, false);
+			}
+		});
+	}
+
+	// records the version a syncing client is up to, so purgeTombstones
+	// keeps the deletes it has not pulled yet
+	public void reportSyncVersion(String client, long version) throws Exception {
+		measured("reportSyncVersion", () ->
+		{
+			long now = System.currentTimeMillis();
+
+			inTransaction(conn ->
+			{
+				try (PreparedStatement ps = conn.prepareStatement("UPDATE grocery_client SET version = ?, seen = ? WHERE client = ?"))
+				{
+					ps.setLong(1, version);
+					ps.setLong(2, now);
+					ps.setString(3, client);
+					if (ps.executeUpdate() > 0)
+						return null;
+				}
+
+				try (PreparedStatement ps = conn.prepareStatement("INSERT INTO grocery_client (client, version, seen) VALUES(?, ?, ?)"))
+				{
+					ps.setString(1, client);
+					ps.setLong(2, version);
+					ps.setLong(3, now);
+					ps.executeUpdate();
+				}
+
+				return null;
+			});
+
+			return null;
+		});
+	}
+
+	// drops the tombstones every client seen within SYNC_CLIENT_TIMEOUT_MILLIS
+	// has pulled already, and forgets the clients not seen since
+	public int purgeTombstones() throws Exception {
+		return measured("purgeTombstones", () ->
+		{
+			long seenSince = System.currentTimeMillis() - SYNC_CLIENT_TIMEOUT_MILLIS;
+
+			return inTransaction(conn ->
+			{
+				try (PreparedStatement ps = conn.prepareStatement("DELETE FROM grocery_client WHERE seen < ?"))
+				{
+					ps.setLong(1, seenSince);
+					ps.executeUpdate();
+				}
+
+				// with no client left, nobody needs the tombstones there are now
+				long horizon;
+				try (PreparedStatement ps = conn.prepareStatement("SELECT MIN(version), COUNT(*) FROM grocery_client");
+					ResultSet rs = ps.executeQuery())
+				{
+					rs.next();
+					horizon = rs.getLong(2) > 0 ? rs.getLong(1) : readVersion(conn);
+				}
+
+				return purgeTombstones(conn, horizon);
+			});
+		});
+	}
+
+	// drops the tombstones and logged changes up to version; a client
+	// further behind than that misses those deletes, is told so by
+	// changesSince and has to reload
+	public int purgeTombstones(long version) throws Exception {
+		return measured("purgeTombstones", () ->
+		{
+			return inTransaction(conn -> purgeTombstones(conn, version));
+		});
+	}
+
+	private static int purgeTombstones(PooledConnection conn, long version) throws Exception {
+		try (PreparedStatement ps = conn.prepareStatement("UPDATE grocery_version SET purged = ? WHERE purged < ?"))
+		{
+			ps.setLong(1, version);
+			ps.setLong(2, version);
+			ps.executeUpdate();
+		}
+
+		try (PreparedStatement ps = conn.prepareStatement("DELETE FROM grocery_change WHERE version <= ?"))
+		{
+			ps.setLong(1, version);
+			ps.executeUpdate();
+		}
+
+		try (PreparedStatement ps = conn.prepareStatement("DELETE FROM grocery_tombstone WHERE version <= ?"))
+		{
+			ps.setLong(1, version);
+			return ps.executeUpdate();
+		}
+	}
+
+	// totals per section and item and the purchase dates, added up by the
+	// database; the rows sent back grow with the number of items and days
+	// groceries were bought on, not with the groceries. Both queries and the
+	// change version run in one repeatable read transaction, so they see the
+	// same groceries and the summary knows which changes it holds
+	public InventorySummary getInventorySummary() throws Exception {
+		return measured("getInventorySummary", () ->
+		{
+			String totalsQuery =
+				"SELECT g.section, g.itemName, i.expires, COUNT(*), SUM(g.quantity) " +
+				"FROM grocery g JOIN item i ON g.itemName = i.name " +
+				"GROUP BY g.section, g.itemName, i.expires";
+			String daysQuery = "SELECT g.date, COUNT(*) FROM grocery g JOIN item i ON g.itemName = i.name GROUP BY g.date";
+
+			return inTransaction(Connection.TRANSACTION_REPEATABLE_READ, conn ->
+			{
+				InventorySummary summary = new InventorySummary();
+				summary.advanceTo(readVersion(conn));
+
+				try (PreparedStatement ps = conn.prepareStatement(totalsQuery);
+					ResultSet rs = ps.executeQuery())
+				{
+					while (rs.next())
+					{
+						summary.add(SECTION.valueOf(rs.getString(1).toUpperCase()), rs.getString(2), rs.getBoolean(3),
+							rs.getLong(4), rs.getLong(5));
+					}
+				}
+
+				try (PreparedStatement ps = conn.prepareStatement(daysQuery);
+					ResultSet rs = ps.executeQuery())
+				{
+					while (rs.next())
+					{
+						LocalDate date = getLocalDate(rs, 1);
+						if (date != null)
+							summary.addDay(date.toEpochDay(), rs.getLong(2));
+					}
+				}
+
+				return summary;
+			});
+		});
+	}
+
+	// counts the groceries getAllGroceries would return
+	public int countGroceries() throws Exception {
+		return countGroceries(GroceryFilter.NONE);
+	}
+
+	// counts the groceries matching filter
+	public int countGroceries(GroceryFilter filter) throws Exception {
+		return measured("countGroceries", () ->
+		{
+			List<String> conditions = new ArrayList<String>();
+			List<Object> params = new ArrayList<Object>();
+			if (!appendFilter(conditions, params, filter))
+				return 0;
+
+			String queryString = "SELECT COUNT(*) FROM grocery g JOIN item i ON g.itemName = i.name" + where(conditions);
+
+			try (PooledConnection conn = borrow();
+				PreparedStatement ps = conn.prepareStatement(queryString))
+			{
+				for (int i = 0; i < params.size(); i++)
+					ps.setObject(i + 1, params.get(i));
+
+				try (ResultSet rs = ps.executeQuery())
+				{
+					rs.next();
+					return rs.getInt(1);
+				}
+			}
+		});
+	}
+
+	// pulls the groceries matching filter, filtered by the database
+	public List<Grocery> getGroceries(GroceryFilter filter) throws Exception {
+		return measured("getGroceries", () ->
+		{
+			List<String> conditions = new ArrayList<String>();
+			List<Object> params = new ArrayList<Object>();
+			if (!appendFilter(conditions, params, filter))
+				return new ArrayList<Grocery>();
+
+			return queryGroceries(GROCERY_QUERY + where(conditions), params);
+		});
+	}
+
+	public GrocerySnapshot getGrocerySnapshot() throws Exception {
+		return getGrocerySnapshot(GroceryFilter.NONE);
+	}
+
+	// pulls the groceries matching filter, in id order, straight into the
+	// columns of a snapshot, without a Grocery or LocalDate per row
+	public GrocerySnapshot getGrocerySnapshot(GroceryFilter filter) throws Exception {
+		return measured("getGrocerySnapshot", () ->
+		{
+			List<String> conditions = new ArrayList<String>();
+			List<Object> params = new ArrayList<Object>();
+			if (!appendFilter(conditions, params, filter))
+				return new GrocerySnapshot.Builder().build();
+
+			return querySnapshot(GROCERY_QUERY + where(conditions) + " ORDER BY g.id", params, 1024);
+		});
+	}
+
+	public List<Grocery> getGroceryPage(SORT_COLUMN sort, boolean ascending, Grocery after, int limit) throws Exception {
+		return getGroceryPage(GroceryFilter.NONE, sort, ascending, after, limit);
+	}
+
+	// pulls up to limit groceries matching filter following after in the given
+	// order, or the first ones when after is null; seeks on the sort column
+	// and id instead of skipping rows, so every page costs the same however
+	// deep it is
+	public List<Grocery> getGroceryPage(GroceryFilter filter, SORT_COLUMN sort, boolean ascending, Grocery after, int limit) throws Exception {
+		return measured("getGroceryPage", () ->
+		{
+			List<Object> params = new ArrayList<Object>();
+			String queryString = pageQuery(filter, sort, ascending, after, limit, params);
+
+			return queryString != null ? queryGroceries(queryString, params) : new ArrayList<Grocery>();
+		});
+	}
+
+	// the same page as getGroceryPage, read straight into a snapshot
+	public GrocerySnapshot getGrocerySnapshotPage(GroceryFilter filter, SORT_COLUMN sort, boolean ascending, Grocery after, int limit) throws Exception {
+		return measured("getGrocerySnapshotPage", () ->
+		{
+			List<Object> params = new ArrayList<Object>();
+			String queryString = pageQuery(filter, sort, ascending, after, limit, params);
+
+			return queryString != null ? querySnapshot(queryString, params, limit) : new GrocerySnapshot.Builder().build();
+		});
+	}
+
+	public List<Grocery> getGroceryPageAt(SORT_COLUMN sort, boolean ascending, int offset, int limit) throws Exception {
+		return getGroceryPageAt(GroceryFilter.NONE, sort, ascending, offset, limit);
+	}
+
+	// pulls up to limit groceries matching filter starting at a position of
+	// the order; the database still walks the skipped rows, so this is only
+	// meant to find a starting point for getGroceryPage after a jump
+	public List<Grocery> getGroceryPageAt(GroceryFilter filter, SORT_COLUMN sort, boolean ascending, int offset, int limit) throws Exception {
+		return measured("getGroceryPageAt", () ->
+		{
+			List<Object> params = new ArrayList<Object>();
+			String queryString = pageAtQuery(filter, sort, ascending, offset, limit, params);
+
+			return queryString != null ? queryGroceries(queryString, params) : new ArrayList<Grocery>();
+		});
+	}
+
+	// the same page as getGroceryPageAt, read straight into a snapshot
+	public GrocerySnapshot getGrocerySnapshotPageAt(GroceryFilter filter, SORT_COLUMN sort, boolean ascending, int offset, int limit) throws Exception {
+		return measured("getGrocerySnapshotPageAt", () ->
+		{
+			List<Object> params = new ArrayList<Object>();
+			String queryString = pageAtQuery(filter, sort, ascending, offset, limit, params);
+
+			return queryString != null ? querySnapshot(queryString, params, limit) : new GrocerySnapshot.Builder().build();
+		});
+	}
+
+	// the query of a getGroceryPage page, its parameters added to params;
+	// null when the filter cannot match any grocery
+	private static String pageQuery(GroceryFilter filter, SORT_COLUMN sort, boolean ascending, Grocery after, int limit,
+		List<Object> params) {
+		List<String> conditions = new ArrayList<String>();
+		if (!appendFilter(conditions, params, filter))
+			return null;
+
+		String op = ascending ? " > " : " < ";
+
+		if (after != null)
+		{
+			if (sort == SORT_COLUMN.ID)
+			{
+				conditions.add("g.id" + op + "?");
+			}
+			else
+			{
+				conditions.add("(" + sort.column + op + "? OR (" + sort.column + " = ? AND g.id" + op + "?))");
+				params.add(sortKey(sort, after));
+				params.add(sortKey(sort, after));
+			}
+			params.add(after.getId());
+		}
+
+		StringBuilder queryString = new StringBuilder(GROCERY_QUERY).append(where(conditions));
+		appendOrderBy(queryString, sort, ascending);
+		queryString.append(" LIMIT ?");
+		params.add(limit);
+
+		return queryString.toString();
+	}
+
+	// the query of a getGroceryPageAt page, its parameters added to params;
+	// null when the filter cannot match any grocery
+	private static String pageAtQuery(GroceryFilter filter, SORT_COLUMN sort, boolean ascending, int offset, int limit,
+		List<Object> params) {
+		List<String> conditions = new ArrayList<String>();
+		if (!appendFilter(conditions, params, filter))
+			return null;
+
+		StringBuilder queryString = new StringBuilder(GROCERY_QUERY).append(where(conditions));
+		appendOrderBy(queryString, sort, ascending);
+		queryString.append(" LIMIT ? OFFSET ?");
+		params.add(limit);
+		params.add(offset);
+
+		return queryString.toString();
+	}
+
+	// adds the WHERE conditions and their parameters for filter; false when
+	// the filter cannot match any grocery, so there is nothing to query
+	private static boolean appendFilter(List<String> conditions, List<Object> params, GroceryFilter filter) {
+		if (filter.isExpiryOnly())
+			conditions.add("i.expires = 1");
+
+		if (!filter.hasText())
+			return true;
+
+		String text = filter.getText();
+
+		switch (filter.getColumn())
+		{
+			case ITEM:
+				// escapes the LIKE wildcards so they match literally
+				String pattern = text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+				conditions.add("UPPER(g.itemName) LIKE ?");
+				params.add(filter.isPrefix() ? pattern + "%" : "%" + pattern + "%");
+				return true;
+
+			case SECTION:
+				// only a handful of sections, so the match is resolved here and
+				// the database gets an index friendly IN list
+				StringBuilder in = new StringBuilder();
+				for (SECTION section: SECTION.values())
+				{
+					if (section.toString().contains(text))
+					{
+						in.append(in.length() == 0 ? "?" : ", ?");
+						params.add(section.toString());
+					}
+				}
+				if (in.length() == 0)
+					return false;
+
+				conditions.add("g.section IN (" + in + ")");
+				return true;
+
+			case BOUGHT_DAYS_AGO:
+				// bought exactly that many days ago, as GroceryFilter.matches has it
+				if (!filter.isDaysAgo())
+					return false;
+
+				conditions.add("g.date = ?");
+				params.add(java.sql.Date.valueOf(LocalDate.ofEpochDay(filter.getBoughtEpochDay())));
+				return true;
+
+			default:
+				return true;
+		}
+	}
+
+	private static String where(List<String> conditions) {
+		return conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+	}
+
+	private static void appendOrderBy(StringBuilder queryString, SORT_COLUMN sort, boolean ascending) {
+		String direction = ascending ? " ASC" : " DESC";
+
+		queryString.append(" ORDER BY ").append(sort.column).append(direction);
+		if (sort != SORT_COLUMN.ID)
+			queryString.append(", g.id").append(direction);
+	}
+
+	// the value of the sort column for a grocery, as bound in a keyset condition
+	private static Object sortKey(SORT_COLUMN sort, Grocery grocery) {
+		switch (sort)
+		{
+			case ITEM:
+				return grocery.getItemName();
+			case QUANTITY:
+				return grocery.getQuantity();
+			case SECTION:
+				return grocery.getSection().toString();
+			case DATE:
+				return java.sql.Date.valueOf(grocery.getDate());
+			default:
+				return grocery.getId();
+		}
+	}
+
+	// runs a GROCERY_QUERY based query with its parameters bound in order
+	private List<Grocery> queryGroceries(String queryString, List<Object> params) throws Exception {
 		List<Grocery> groceries = new ArrayList<Grocery>();
+		Map<String, Item> items = new HashMap<String, Item>();
 
-		while(rs.next())
+		try (PooledConnection conn = borrow();
+			PreparedStatement ps = conn.prepareStatement(queryString))
 		{
-			int id = rs.getInt(1);
-			Item item = searchItem(rs.getString(2));
-			LocalDate date = LocalDate.parse(rs.getString(3), dtf);
-			int quantity = rs.getInt(4);
-			FridgeDSC.SECTION section = SECTION.valueOf(rs.getString(5).toUpperCase());
-					
-			groceries.add(new Grocery(id, item, date, quantity, section));
+			for (int i = 0; i < params.size(); i++)
+				ps.setObject(i + 1, params.get(i));
+
+			try (ResultSet rs = ps.executeQuery())
+			{
+				while(rs.next())
+				{
+					groceries.add(mapGrocery(rs, items));
+				}
+			}
 		}
 
 		return groceries;
 	}
 
-	// adds a grocery to the database
-	public int addGrocery(String name, int quantity, SECTION section) throws Exception {
-		DateTimeFormatter dtf = DateTimeFormatter.ofPattern(DATE_FORMAT);
-		LocalDate date = LocalDate.now();
-		String dateStr = date.format(dtf);
-		
-		Item precond = searchItem(name);
-		
-		boolean pre = (precond != null);
-		if(!pre)
+	// runs a GROCERY_QUERY based query into the columns of a snapshot,
+	// without a Grocery or LocalDate per row
+	private GrocerySnapshot querySnapshot(String queryString, List<Object> params, int capacity) throws Exception {
+		GrocerySnapshot.Builder builder = new GrocerySnapshot.Builder(capacity);
+
+		try (PooledConnection conn = borrow();
+			PreparedStatement ps = conn.prepareStatement(queryString))
 		{
-			String msg = "Item Name: " + name + " does not exist";
-            System.out.println("\nERROR " + msg);
-            throw new Exception(msg);
+			for (int i = 0; i < params.size(); i++)
+				ps.setObject(i + 1, params.get(i));
+
+			try (ResultSet rs = ps.executeQuery())
+			{
+				while (rs.next())
+				{
+					int item = builder.item(rs.getString(2), rs.getBoolean(6));
+					java.sql.Date date = rs.getDate(3);
+					long epochDay = date != null ? date.toLocalDate().toEpochDay() : FridgeClock.INSTANCE.todayEpochDay();
+
+					builder.add(rs.getInt(1), item, epochDay, rs.getInt(4), SECTION.valueOf(rs.getString(5).toUpperCase()));
+				}
+			}
 		}
-		
-		//Altered command string as The id attribute of a grocery is of type int and is auto-generated by the database
-		//as can be seen in the SQL script
-		String command = "INSERT INTO grocery (ItemName, date, quantity, section) VALUES(?, ?, ?, ?)";
-		
-		preparedStatement = connection.prepareStatement(command);
-		
-		preparedStatement.setString(1, name);
-		preparedStatement.setString(2, dateStr);
-		preparedStatement.setInt(3, quantity);
-		preparedStatement.setString(4, section.toString());
-		preparedStatement.executeUpdate();
-	  
-		// retrieving & returning last inserted record id
-		ResultSet rs = statement.executeQuery("SELECT LAST_INSERT_ID()");
-		rs.next();
-		int newId = rs.getInt(1);
 
-		return newId;		
+		return builder.build();
 	}
 
-	public Grocery useGrocery(int id) throws Exception {
+	// maps the current row of a GROCERY_QUERY result; items holds the one
+	// Item instance per name shared by all rows of that result set
+	private static Grocery mapGrocery(ResultSet rs, Map<String, Item> items) throws Exception {
+		int id = rs.getInt(1);
+		String name = rs.getString(2);
+		LocalDate date = getLocalDate(rs, 3);
+		int quantity = rs.getInt(4);
+		FridgeDSC.SECTION section = SECTION.valueOf(rs.getString(5).toUpperCase());
 
-		Grocery precond = searchGrocery(id);
-		
-		// - check if has quantity is greater one; if not throw exception
-		//   with adequate error message
-		boolean pre = (precond != null);
-		if(!pre)
-		{
-			String msg = "Grocery id: " + id + " does not exist";
-			System.out.println("\nERROR: " + msg);
-			throw new Exception(msg);
+		Item item = items.get(name);
+		if (item == null)
+		{
+			item = new Item(name, rs.getBoolean(6));
+			items.put(name, item);
 		}
-		
-		if(precond.getQuantity() <= 1)
+
+		return new Grocery(id, item, date, quantity, section);
+	}
+
+	// adds a grocery to the database; the change holds the new row and its id
+	public GroceryChange addGrocery(String name, int quantity, SECTION section) throws Exception {
+		return measured("addGrocery", () ->
+		{
+			return addGroceries(Arrays.asList(new GroceryLine(name, quantity, section))).get(0);
+		});
+	}
+
+	// adds many groceries in one transaction, sending the inserts in JDBC
+	// batches; either every line is added or none is
+	public List<GroceryChange> addGroceries(List<GroceryLine> lines) throws Exception {
+		return addGroceries(lines, BATCH_SIZE);
+	}
+
+	public List<GroceryChange> addGroceries(List<GroceryLine> lines, int batchSize) throws Exception {
+		return measured("addGroceries", () ->
+		{
+			if (batchSize < 1)
+				throw new Exception("[ERROR] Batch size cannot be less than 1");
+
+			// checks every distinct item name once, against the item cache
+			Map<String, Item> items = new HashMap<String, Item>();
+			for (GroceryLine line: lines)
+			{
+				String name = line.getItemName();
+				if (items.containsKey(name))
+					continue;
+
+				Item precond = searchItem(name);
+				if (precond == null)
+				{
+					String msg = "Item Name: " + name + " does not exist";
+					System.out.println("\nERROR " + msg);
+					throw new Exception(msg);
+				}
+				items.put(name, precond);
+			}
+
+			//Altered command string as The id attribute of a grocery is of type int and is auto-generated by the database
+			//as can be seen in the SQL script
+			String command = "INSERT INTO grocery (ItemName, date, quantity, section, version) VALUES(?, ?, ?, ?, ?)";
+			return inTransaction(conn ->
+			{
+				List<GroceryChange> changes = new ArrayList<GroceryChange>(lines.size());
+
+				try (PreparedStatement ps = conn.prepareStatement(command, Statement.RETURN_GENERATED_KEYS))
+				{
+					long version = nextVersion(conn);
+
+					int from = 0;
+					while (from < lines.size())
+					{
+						int to = Math.min(from + batchSize, lines.size());
+
+						for (GroceryLine line: lines.subList(from, to))
+						{
+							ps.setString(1, line.getItemName());
+							ps.setDate(2, java.sql.Date.valueOf(line.getDate()));
+							ps.setInt(3, line.getQuantity());
+							ps.setString(4, line.getSection().toString());
+							ps.setLong(5, version);
+							ps.addBatch();
+						}
+						ps.executeBatch();
+
+						// the generated ids come back in the order the rows were added
+						try (ResultSet keys = ps.getGeneratedKeys())
+						{
+							for (GroceryLine line: lines.subList(from, to))
+							{
+								if (!keys.next())
+									throw new Exception("[ERROR] Missing generated id for " + line);
+
+								Item item = items.get(line.getItemName());
+								changes.add(GroceryChange.inserted(
+									new Grocery(keys.getInt(1), item, line.getDate(), line.getQuantity(), line.getSection()), version));
+							}
+						}
+
+						from = to;
+					}
+				}
+
+				logChanges(conn, changes, batchSize);
+				return changes;
+			});
+		});
+	}
+
+	// uses one of a grocery; the change holds the grocery with its new quantity
+	public GroceryChange useGrocery(int id) throws Exception {
+		return useGrocery(id, 1);
+	}
+
+	// uses count of a grocery with a single conditional UPDATE, so two clients
+	// can never take the quantity below the minimum between them
+	public GroceryChange useGrocery(int id, int count) throws Exception {
+		return measured("useGrocery", () ->
+		{
+			if (count < 1)
+				throw new Exception("[ERROR] Count cannot be less than 1");
+
+			return inTransaction(conn ->
+			{
+				long version = nextVersion(conn);
+
+				int updated;
+				try (PreparedStatement ps = conn.prepareStatement(USE_COMMAND))
+				{
+					bindUse(ps, id, count, version);
+					updated = ps.executeUpdate();
+				}
+
+				if (updated == 0)
+					throw useFailure(conn, id);
+
+				// the row is still locked by the UPDATE, so this reads its new quantity
+				List<Grocery> used = fetchGroceries(conn, Arrays.asList(id));
+				if (used.isEmpty())
+					throw new Exception("Grocery id: " + id + " does not exist");
+
+				GroceryChange change = GroceryChange.updated(used.get(0), -count, version);
+				logChanges(conn, Arrays.asList(change), BATCH_SIZE);
+				return change;
+			});
+		});
+	}
+
+	// uses many groceries at once, counts holding how many of each grocery id;
+	// every decrement goes out in one batch and stands or fails on its own,
+	// so the ids missing from the returned changes are the rejected ones
+	public List<GroceryChange> useGroceries(Map<Integer, Integer> counts) throws Exception {
+		return measured("useGroceries", () ->
+		{
+			List<Integer> used = new ArrayList<Integer>();
+
+			for (Map.Entry<Integer, Integer> entry: counts.entrySet())
+			{
+				if (entry.getValue() < 1)
+					throw new Exception("[ERROR] Count for grocery id: " + entry.getKey() + " cannot be less than 1");
+			}
+
+			return inTransaction(conn ->
+			{
+				List<Integer> ids = new ArrayList<Integer>(counts.keySet());
+				long version = nextVersion(conn);
+
+				try (PreparedStatement ps = conn.prepareStatement(USE_COMMAND))
+				{
+					for (int id: ids)
+					{
+						bindUse(ps, id, counts.get(id), version);
+						ps.addBatch();
+					}
+
+					int[] updated = ps.executeBatch();
+
+					// a batch the driver rewrote into one statement, as Connector/J
+					// does with rewriteBatchedStatements, may report SUCCESS_NO_INFO
+					// instead of counts; the rows it used carry this version then
+					Set<Integer> written = null;
+					for (int i = 0; i < updated.length; i++)
+					{
+						boolean applied = updated[i] > 0;
+						if (updated[i] == Statement.SUCCESS_NO_INFO)
+						{
+							if (written == null)
+								written = idsAtVersion(conn, version);
+							applied = written.contains(ids.get(i));
+						}
+
+						if (applied)
+							used.add(ids.get(i));
+					}
+				}
+
+				List<GroceryChange> changes = new ArrayList<GroceryChange>(used.size());
+				for (Grocery grocery: fetchGroceries(conn, used))
+					changes.add(GroceryChange.updated(grocery, -counts.get(grocery.getId()), version));
+
+				logChanges(conn, changes, BATCH_SIZE);
+				return changes;
+			});
+		});
+	}
+
+	private static void bindUse(PreparedStatement ps, int id, int count, long version) throws SQLException {
+		ps.setInt(1, count);
+		ps.setLong(2, version);
+		ps.setInt(3, id);
+		ps.setInt(4, count + Grocery.MINIMUM_QUANTITY);
+	}
+
+	// ids of the groceries written at version; must run inside the transaction
+	// that took version, as no other can write at it
+	private static Set<Integer> idsAtVersion(PooledConnection conn, long version) throws Exception {
+		Set<Integer> ids = new HashSet<Integer>();
+
+		try (PreparedStatement ps = conn.prepareStatement("SELECT id FROM grocery WHERE version = ?"))
+		{
+			ps.setLong(1, version);
+
+			try (ResultSet rs = ps.executeQuery())
+			{
+				while (rs.next())
+					ids.add(rs.getInt(1));
+			}
+		}
+
+		return ids;
+	}
+
+	// records changes in grocery_change; must run inside the transaction of
+	// the mutation that made them
+	private static void logChanges(PooledConnection conn, List<GroceryChange> changes, int batchSize) throws Exception {
+		try (PreparedStatement ps = conn.prepareStatement(LOG_COMMAND))
 		{
-			throw new Exception("Quantity cannot be less than 1");
+			int batched = 0;
+			for (GroceryChange change: changes)
+			{
+				Grocery grocery = change.getGrocery();
+				ps.setLong(1, change.getVersion());
+				ps.setInt(2, change.getId());
+				ps.setString(3, change.getType().toString());
+				ps.setString(4, grocery.getItemName());
+				ps.setDate(5, java.sql.Date.valueOf(grocery.getDate()));
+				ps.setInt(6, grocery.getQuantity());
+				ps.setString(7, grocery.getSection().toString());
+				ps.setInt(8, change.getQuantityDelta());
+				ps.addBatch();
+
+				if (++batched % batchSize == 0)
+					ps.executeBatch();
+			}
+
+			if (batched % batchSize != 0)
+				ps.executeBatch();
 		}
-		
-		precond.updateQuantity();
-		
-		String queryString = 
-			"UPDATE grocery " +
-			"SET quantity = quantity - 1 " +
-			"WHERE quantity > 1 " + 
-			"AND id = " + id + ";";
-		
-		statement.executeUpdate(queryString);
-		
-		return precond;
+	}
 
+	// takes the next change version; must run inside the caller's transaction
+	private static long nextVersion(PooledConnection conn) throws Exception {
+		try (PreparedStatement ps = conn.prepareStatement(NEXT_VERSION_COMMAND))
+		{
+			if (ps.executeUpdate() == 0)
+				throw new Exception("[ERROR] Table grocery_version has no row");
+		}
+
+		return readVersion(conn);
 	}
 
-	// removes grocery from database
-	public int removeGrocery(int id) throws Exception {
-		String queryString = "DELETE FROM grocery WHERE id = " + id + ";";
+	private static long readVersion(PooledConnection conn) throws Exception {
+		try (PreparedStatement ps = conn.prepareStatement(VERSION_QUERY);
+			ResultSet rs = ps.executeQuery())
+		{
+			if (!rs.next())
+				throw new Exception("[ERROR] Table grocery_version has no row");
 
-		Grocery precond = searchGrocery(id);
-						
-		// - if grocery does not exist, throw exception with adequate 
-		//   error message
-		boolean pre = (precond != null);
-		if(!pre)
-		{
-			String msg = "Grocery id: " + id + " does not exist";
-            System.out.println("\nERROR " + msg);
-            throw new Exception(msg);
+			return rs.getLong(1);
+		}
+	}
+
+	// tells apart a missing grocery from one without enough quantity left
+	private static Exception useFailure(PooledConnection conn, int id) throws SQLException {
+		try (PreparedStatement ps = conn.prepareStatement("SELECT quantity FROM grocery WHERE id = ?"))
+		{
+			ps.setInt(1, id);
+
+			try (ResultSet rs = ps.executeQuery())
+			{
+				if (!rs.next())
+				{
+					String msg = "Grocery id: " + id + " does not exist";
+					System.out.println("\nERROR: " + msg);
+					return new Exception(msg);
+				}
+			}
 		}
+
+		return new Exception("Quantity cannot be less than 1");
+	}
+
+	// reads the groceries with the given ids on the caller's connection
+	private static List<Grocery> fetchGroceries(PooledConnection conn, Collection<Integer> ids) throws Exception {
+		List<Grocery> groceries = new ArrayList<Grocery>();
+		if (ids.isEmpty())
+			return groceries;
+
+		StringBuilder queryString = new StringBuilder(GROCERY_QUERY).append(" WHERE g.id IN (");
+		for (int i = 0; i < ids.size(); i++)
+			queryString.append(i == 0 ? "?" : ", ?");
+		queryString.append(")");
+
+		try (PreparedStatement ps = conn.prepareStatement(queryString.toString()))
+		{
+			int index = 1;
+			for (int id: ids)
+				ps.setInt(index++, id);
+
+			try (ResultSet rs = ps.executeQuery())
+			{
+				Map<String, Item> items = new HashMap<String, Item>();
+				while (rs.next())
+					groceries.add(mapGrocery(rs, items));
+			}
+		}
+
+		return groceries;
+	}
+
+	// removes grocery from database; the change holds the row as it was
+	public GroceryChange removeGrocery(int id) throws Exception {
+		return measured("removeGrocery", () ->
+		{
+			String queryString = "DELETE FROM grocery WHERE id = ?";
+
+			Grocery precond = searchGrocery(id);
+						
+			// - if grocery does not exist, throw exception with adequate 
+			//   error message
+			boolean pre = (precond != null);
+			if(!pre)
+			{
+				String msg = "Grocery id: " + id + " does not exist";
+	            System.out.println("\nERROR " + msg);
+	            throw new Exception(msg);
+			}
 		
-		// - if grocery exists, statement execute update on queryString
-		//   return the value value of that statement execute update
-		return statement.executeUpdate(queryString);	
+			// - if grocery exists, statement execute update on queryString;
+			//   nothing deleted means another client removed it in between;
+			//   the tombstone tells the other clients it is gone
+			return inTransaction(conn ->
+			{
+				long version = nextVersion(conn);
+
+				// the version row serializes the mutations, so this is the row
+				// as it is deleted, whatever was used of it since precond
+				List<Grocery> removed = fetchGroceries(conn, Arrays.asList(id));
+				if (removed.isEmpty())
+					throw new Exception("Grocery id: " + id + " does not exist");
+
+				try (PreparedStatement ps = conn.prepareStatement(queryString))
+				{
+					ps.setInt(1, id);
+					if (ps.executeUpdate() == 0)
+						throw new Exception("Grocery id: " + id + " does not exist");
+				}
 
+				try (PreparedStatement ps = conn.prepareStatement("INSERT INTO grocery_tombstone (id, version) VALUES(?, ?)"))
+				{
+					ps.setInt(1, id);
+					ps.setLong(2, version);
+					ps.executeUpdate();
+				}
+
+				GroceryChange change = GroceryChange.deleted(removed.get(0), version);
+				logChanges(conn, Arrays.asList(change), BATCH_SIZE);
+				return change;
+			});
+
+		});
 	}
 
 	// STATIC HELPERS -------------------------------------------------------
 
+	// reads a DATE column; goes through java.sql.Date because the bundled
+	// Connector/J 5.1 predates getObject(column, LocalDate.class)
+	public static LocalDate getLocalDate(ResultSet rs, int column) throws SQLException {
+		java.sql.Date date = rs.getDate(column);
+
+		return date != null ? date.toLocalDate() : null;
+	}
+
 	public static long calcDaysAgo(LocalDate date) {
-    	return Math.abs(Duration.between(LocalDate.now().atStartOfDay(), date.atStartOfDay()).toDays());
+    	return FridgeClock.INSTANCE.daysAgo(date.toEpochDay());
 	}
 
 	public static String calcDaysAgoStr(LocalDate date) {
+		return calcDaysAgoStr(date.toEpochDay());
+	}
+
+	// text for a date given as epoch day; the texts of the last ten years
+	// or so are shared, so rendering a cell allocates nothing
+	public static String calcDaysAgoStr(long epochDay) {
     	String formattedDaysAgo;
-    	long diff = calcDaysAgo(date);
+    	long diff = FridgeClock.INSTANCE.daysAgo(epochDay);
 
     	if (diff == 0)
     		formattedDaysAgo = "today";
     	else if (diff == 1)
     		formattedDaysAgo = "yesterday";
+    	else if (diff < DAYS_AGO_CACHED)
+    	{
+    		formattedDaysAgo = daysAgoTexts[(int) diff];
+    		if (formattedDaysAgo == null)
+    		{
+    			formattedDaysAgo = diff + " days ago";
+    			daysAgoTexts[(int) diff] = formattedDaysAgo;
+    		}
+    	}
     	else formattedDaysAgo = diff + " days ago";	
 
     	return formattedDaysAgo;			
@@ -272,11 +1698,13 @@ public class FridgeDSC {
 		System.out.println("\n\nshowing all of each:");
 		System.out.println(myFridgeDSC.getAllItems());
 		System.out.println(myFridgeDSC.getAllGroceries());
+		System.out.println("item cache: " + itemCache);
+		System.out.println("pool: " + pool);
 
 		//TESTS
-		//int addedId = myFridgeDSC.addGrocery("Milk", 40, SECTION.COOLING);
+		//int addedId = myFridgeDSC.addGrocery("Milk", 40, SECTION.COOLING).getId();
 		//System.out.println("added: " + addedId);
-		//System.out.println("deleting " + (addedId - 1) + ": " + (myFridgeDSC.removeGrocery(addedId - 1) > 0 ? "DONE" : "FAILED"));
+		//System.out.println("deleting " + (addedId - 1) + ": " + myFridgeDSC.removeGrocery(addedId - 1));
 		//System.out.println("using " + (addedId) + ": " + myFridgeDSC.useGrocery(addedId));
 		//System.out.println(myFridgeDSC.searchGrocery(addedId));
 
@@ -0,0 +1,205 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+// asynchronous facade over the data source controller, so the JavaFX
+// Application Thread never waits on a database round trip; every call runs
+// on a background executor and completes a CompletableFuture
+public class FridgeDSCAsync {
+
+	private final FridgeDSC fridgeDSC;
+	private final ExecutorService executor;
+
+	// the threads running a call now, whose queries shutdown cancels
+	private final Set<Thread> running = ConcurrentHashMap.newKeySet();
+
+	// constructor
+	public FridgeDSCAsync(FridgeDSC fridgeDSC, ExecutorService executor) {
+		this.fridgeDSC = fridgeDSC;
+		this.executor = executor;
+	}
+
+	// constructor
+	public FridgeDSCAsync(FridgeDSC fridgeDSC) {
+		this(fridgeDSC, newExecutor());
+	}
+
+	public CompletableFuture<List<Grocery>> getAllGroceries() {
+		return submit(() -> fridgeDSC.getAllGroceries());
+	}
+
+	public CompletableFuture<List<Grocery>> getGroceries(GroceryFilter filter) {
+		return submit(() -> fridgeDSC.getGroceries(filter));
+	}
+
+	// hands the groceries matching filter to consumer as they are read, on
+	// the background thread, and closes the stream after; completes with
+	// what consumer returns
+	public <T> CompletableFuture<T> withGroceries(GroceryFilter filter, Function<Stream<Grocery>, T> consumer) {
+		return submit(() ->
+		{
+			try (Stream<Grocery> groceries = fridgeDSC.streamGroceries(filter, FridgeDSC.FETCH_SIZE))
+			{
+				return consumer.apply(groceries);
+			}
+		});
+	}
+
+	public CompletableFuture<InventorySummary> getInventorySummary() {
+		return submit(() -> fridgeDSC.getInventorySummary());
+	}
+
+	public CompletableFuture<Integer> countGroceries() {
+		return submit(() -> fridgeDSC.countGroceries());
+	}
+
+	public CompletableFuture<Integer> countGroceries(GroceryFilter filter) {
+		return submit(() -> fridgeDSC.countGroceries(filter));
+	}
+
+	public CompletableFuture<GrocerySnapshot> getGrocerySnapshotPage(GroceryFilter filter, FridgeDSC.SORT_COLUMN sort, boolean ascending, Grocery after, int limit) {
+		return submit(() -> fridgeDSC.getGrocerySnapshotPage(filter, sort, ascending, after, limit));
+	}
+
+	public CompletableFuture<GrocerySnapshot> getGrocerySnapshotPageAt(GroceryFilter filter, FridgeDSC.SORT_COLUMN sort, boolean ascending, int offset, int limit) {
+		return submit(() -> fridgeDSC.getGrocerySnapshotPageAt(filter, sort, ascending, offset, limit));
+	}
+
+	public CompletableFuture<List<Item>> getAllItems() {
+		return submit(() -> fridgeDSC.getAllItems());
+	}
+
+	public CompletableFuture<Grocery> searchGrocery(int id) {
+		return submit(() -> fridgeDSC.searchGrocery(id));
+	}
+
+	public CompletableFuture<GroceryChange> addGrocery(String name, int quantity, FridgeDSC.SECTION section) {
+		return submit(() -> fridgeDSC.addGrocery(name, quantity, section));
+	}
+
+	public CompletableFuture<List<GroceryChange>> addGroceries(List<GroceryLine> lines) {
+		return submit(() -> fridgeDSC.addGroceries(lines));
+	}
+
+	public CompletableFuture<GroceryChange> useGrocery(int id) {
+		return submit(() -> fridgeDSC.useGrocery(id));
+	}
+
+	public CompletableFuture<List<GroceryChange>> useGroceries(Map<Integer, Integer> counts) {
+		return submit(() -> fridgeDSC.useGroceries(counts));
+	}
+
+	public CompletableFuture<GroceryChange> removeGrocery(int id) {
+		return submit(() -> fridgeDSC.removeGrocery(id));
+	}
+
+	public CompletableFuture<Long> getChangeVersion() {
+		return submit(() -> fridgeDSC.getChangeVersion());
+	}
+
+	public CompletableFuture<GroceryChangeSet> changesSince(long version) {
+		return submit(() -> fridgeDSC.changesSince(version));
+	}
+
+	// reports the version client is up to, then purges the tombstones every
+	// client has pulled; completes with how many were dropped
+	public CompletableFuture<Integer> purgeTombstones(String client, long version) {
+		return submit(() ->
+		{
+			fridgeDSC.reportSyncVersion(client, version);
+			return fridgeDSC.purgeTombstones();
+		});
+	}
+
+	public FridgeDSC getFridgeDSC() {
+		return this.fridgeDSC;
+	}
+
+	// stops accepting calls and cancels the queries of the ones still running
+	public void shutdown() {
+		executor.shutdown();
+		for (Thread thread: running)
+			FridgeDSC.cancel(thread);
+	}
+
+	// runs task on the executor; cancelling the returned future skips the
+	// task if it has not started, and else cancels the query it runs, which
+	// then fails; the time it waited for a thread is recorded in
+	// FridgeMetrics as async.queue, while FridgeDSC records the time of each
+	// call itself as "dsc." + its name, whoever makes it
+	protected <T> CompletableFuture<T> submit(Callable<T> task) {
+		CompletableFuture<T> future = new CompletableFuture<T>();
+		long submitted = System.nanoTime();
+
+		// the thread running task, null before and after; the task waits for
+		// a cancel in progress, so its thread cannot move on to other work
+		Thread[] runner = new Thread[1];
+
+		Future<?> queued = executor.submit(() ->
+		{
+			synchronized (runner)
+			{
+				if (future.isDone())
+					return;
+				runner[0] = Thread.currentThread();
+			}
+			running.add(runner[0]);
+
+			long start = System.nanoTime();
+			FridgeMetrics.INSTANCE.record("async.queue", start - submitted, 0, false);
+
+			try
+			{
+				future.complete(task.call());
+			}
+			catch (Throwable exception)
+			{
+				future.completeExceptionally(exception);
+			}
+			finally
+			{
+				running.remove(runner[0]);
+				synchronized (runner)
+				{
+					runner[0] = null;
+				}
+			}
+		});
+
+		// a cancel may open a connection of its own (MySQL sends KILL QUERY),
+		// so it runs on the executor rather than the thread cancelling
+		future.whenCompleteAsync((result, exception) ->
+		{
+			if (!future.isCancelled())
+				return;
+
+			queued.cancel(false);
+			synchronized (runner)
+			{
+				if (runner[0] != null)
+					FridgeDSC.cancel(runner[0]);
+			}
+		}, executor);
+
+		return future;
+	}
+
+	// one virtual thread per call where the runtime has them (Java 21+),
+	// otherwise a cached pool of daemon threads
+	public static ExecutorService newExecutor() {
+		try
+		{
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException exception)
+		{
+			return Executors.newCachedThreadPool(runnable ->
+			{
+				Thread thread = new Thread(runnable, "FridgeDSCAsync");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+}
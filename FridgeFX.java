@@ -1,10 +1,17 @@
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.util.Duration;
 import javafx.stage.Stage;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.time.LocalDate;
 import java.io.*;
 import javafx.collections.*;
 import javafx.collections.transformation.*;
@@ -19,22 +26,97 @@ public class FridgeFX extends Application {
 	public static final int SECTION_COL_MIN_WIDTH = 100;
 	public static final int BOUGHT_COL_MIN_WIDTH = 100;
 	public static final int TABLE_VIEW_MIN_HEIGHT = 400;
-	
-	// used as ChoiceBox value for filter
-	public enum FILTER_COLUMNS {
-		ITEM,
-		SECTION,
-		BOUGHT_DAYS_AGO
-	};
+
+	// tables with more groceries than this are paged in from the database as
+	// the user scrolls instead of being loaded at once (-Dfridge.paged.threshold)
+	public static final int PAGED_TABLE_THRESHOLD = Integer.getInteger("fridge.paged.threshold", 10000);
+
+	// how often the changes other clients made are pulled in, 0 to never
+	// (-Dfridge.sync.interval)
+	public static final long SYNC_INTERVAL_MILLIS = Long.getLong("fridge.sync.interval", 2000);
+
+	// how often a syncing client reports its version and purges the
+	// tombstones every client has pulled, 0 to never (-Dfridge.sync.purgeInterval)
+	public static final long SYNC_PURGE_INTERVAL_MILLIS = Long.getLong("fridge.sync.purgeInterval", 60000);
+
+	// UPDATE ONE shows the use at once and writes the uses of a grocery
+	// behind, coalesced, after fridge.writeBehind.flushInterval ms
+	// (-Dfridge.writeBehind=true)
+	public static final boolean WRITE_BEHIND = Boolean.getBoolean("fridge.writeBehind");
+	public static final long WRITE_BEHIND_FLUSH_MILLIS =
+		Long.getLong("fridge.writeBehind.flushInterval", WriteBehindBuffer.DEFAULT_FLUSH_INTERVAL_MILLIS);
 	
 	// the data source controller
 	private FridgeDSC fridgeDSC;
+
+	// runs the data source controller calls off the JavaFX Application Thread
+	private FridgeDSCAsync fridgeAsync;
+
+	// the grocery load in flight, if any, and the controls showing it
+	private CompletableFuture<List<Grocery>> loading;
+	private ProgressIndicator loadingPI;
+	private Button stopBT;
+
+	// backs the table instead of tableData when the table is paged, else null
+	private PagedGroceryList pagedList;
+
+	// indexes the groceries in tableData for the filter text field, and the
+	// filter being shown, null when the text field is empty
+	private final GroceryIndex groceryIndex = new GroceryIndex();
+
+	// row of each grocery id in tableData, so a change finds its row
+	// without scanning the table
+	private final Map<Integer, Integer> rowOfId = new HashMap<Integer, Integer>();
+	private GroceryFilter activeFilter;
+
+	// looks filters up in the grocery index off the FX thread
+	private FilterPipeline filterPipeline;
+
+	// polls for changes after syncVersion; syncLoads counts the finished
+	// loads, mutations and write behind flushes, as a poll that overlapped
+	// one may hold rows older than it
+	private Timeline syncTimeline;
+	private CompletableFuture<GroceryChangeSet> syncing;
+	private long syncVersion;
+	private int syncLoads;
+
+	// the mutations of this client in flight, and the versions of the ones
+	// shown already, which polls skip when they come back
+	private int mutating;
+	private final Set<Long> ownVersions = new HashSet<Long>();
+
+	// who this client is to purgeTombstones, and when it last purged
+	private final String syncClient = UUID.randomUUID().toString();
+	private long lastPurge;
+
+	// redraws the "Bought" column when the day rolls over
+	private Consumer<LocalDate> rolloverListener;
+
+	// tells which expiring groceries are due, kept up to date by every
+	// change instead of by rescanning the table
+	private ExpiryEngine expiryEngine;
+	private Label expiryLB;
+
+	// totals shown by the STATS panel, added up by the database at a change
+	// version and then moved by this client's changes and the deltas polls
+	// bring; summaryWanted asks for a load once the uses written behind are
+	private InventorySummary inventorySummary;
+	private CompletableFuture<InventorySummary> summarizing;
+	private boolean summaryWanted;
+	private Label statsLB;
+
+	// the uses of UPDATE ONE not written yet, when writing behind, and the
+	// groceries shown with them taken off
+	private WriteBehindBuffer useBuffer;
+	private final Map<Integer, Grocery> usedRows = new HashMap<Integer, Grocery>();
 	
 
 	public void init() throws Exception {
 		// creating an instance of the data source controller to be used
 		// in this application
 		fridgeDSC = new FridgeDSC();
+		fridgeAsync = new FridgeDSCAsync(fridgeDSC);
+		FridgeMetrics.INSTANCE.start();
 
 		try
 		{
@@ -85,6 +167,13 @@ public class FridgeFX extends Application {
 		sectionColumn.setCellValueFactory(new PropertyValueFactory<>("Section"));
 		daysAgoColumn.setCellValueFactory(new PropertyValueFactory<>("DaysAgo"));
 
+		// the database column each table column sorts by when the table is paged
+		idColumn.setUserData(FridgeDSC.SORT_COLUMN.ID);
+		itemNameColumn.setUserData(FridgeDSC.SORT_COLUMN.ITEM);
+		quantityColumn.setUserData(FridgeDSC.SORT_COLUMN.QUANTITY);
+		sectionColumn.setUserData(FridgeDSC.SORT_COLUMN.SECTION);
+		daysAgoColumn.setUserData(FridgeDSC.SORT_COLUMN.DATE);
+
 		// creates the table view and add table columns to it
 		TableView<Grocery> tableView = new TableView<Grocery>();
 
@@ -107,22 +196,27 @@ public class FridgeFX extends Application {
 		sectionColumn.setMinWidth(SECTION_COL_MIN_WIDTH);
 		daysAgoColumn.setMinWidth(BOUGHT_COL_MIN_WIDTH);
 		tableView.setMinHeight(TABLE_VIEW_MIN_HEIGHT);
-				
-		tableData.clear();
-		tableData.addAll(fridgeDSC.getAllGroceries());
+
+		// loading indicator and STOP button, only shown while groceries load
+		loadingPI = new ProgressIndicator();
+		loadingPI.setMaxSize(30, 30);
+		stopBT = new Button("STOP");
+		stopBT.setOnAction(e -> cancelLoading());
+		loadingPI.setVisible(false);
+		stopBT.setVisible(false);
 		
 		// filter container 
 		TextField filterTF = new TextField();
 		Label filterLB = new Label("Filter By: ");
 		
-		ChoiceBox<FILTER_COLUMNS> filterCB = new ChoiceBox<>();
-		filterCB.getItems().addAll(FILTER_COLUMNS.values());
-		filterCB.setValue(FILTER_COLUMNS.ITEM);
+		ChoiceBox<GroceryFilter.FILTER_COLUMNS> filterCB = new ChoiceBox<>();
+		filterCB.getItems().addAll(GroceryFilter.FILTER_COLUMNS.values());
+		filterCB.setValue(GroceryFilter.FILTER_COLUMNS.ITEM);
 		
 		CheckBox cb = new CheckBox("Show Expiry Only");
 		cb.setDisable(true);
 		
-		HBox filterHBox = new HBox(filterTF, filterLB, filterCB, cb);
+		HBox filterHBox = new HBox(filterTF, filterLB, filterCB, cb, loadingPI, stopBT);
 		filterHBox.setStyle("-fx-spacing: 5");
 
 		// choiceBox filters display by input bought days ago
@@ -130,7 +224,7 @@ public class FridgeFX extends Application {
 		{
 			Enum selected = filterCB.getValue();
 
-			if (selected.equals(FILTER_COLUMNS.BOUGHT_DAYS_AGO))
+			if (selected.equals(GroceryFilter.FILTER_COLUMNS.BOUGHT_DAYS_AGO))
 			{
 				cb.setDisable(false);
 			}
@@ -141,6 +235,9 @@ public class FridgeFX extends Application {
             }
             filterTF.clear();
             filterTF.requestFocus();
+
+			if (pagedList != null)
+				pagedList.setFilter(new GroceryFilter(filterCB.getValue(), "", false));
         });
 
 		// checkBox filters display to show groceries with an expiry
@@ -149,80 +246,92 @@ public class FridgeFX extends Application {
             filterTF.clear();
             filterTF.requestFocus();
 
-            try
-            {
-				tableData.clear();
-				if (cb.isSelected())
-				{
-					List<Grocery> groceries = new ArrayList<Grocery>();
-					groceries = fridgeDSC.getAllGroceries();
-
-					for (Grocery g: groceries)
-					{
-						Item item = g.getItem();
-						if (item.canExpire())
-						{
-							tableData.add(g);
-						}
-					}
-				}
-				else
-				{
-					tableData.addAll(fridgeDSC.getAllGroceries());
-				}
-            }
-            catch (Exception exception)
-            {
-				System.out.println(exception.getMessage());
-            }
+			if (pagedList != null)
+				pagedList.setFilter(new GroceryFilter(filterCB.getValue(), "", cb.isSelected()));
+			else
+				loadGroceries(tableData, cb.isSelected());
         });
 
-		// creates a filtered list
-		FilteredList<Grocery> filteredList = new FilteredList<>(tableData, p -> true);
+		// creates a sorted list of all loaded groceries
+		SortedList<Grocery> sortedList = new SortedList<>(tableData);
 
-		// creates a sorted list from the filtered list
-		SortedList<Grocery> sortedList = new SortedList<>(filteredList);
+		// groceries matching the filter text, looked up in the grocery index,
+		// and a sorted list of them shown while a filter is typed in
+		ObservableList<Grocery> matchData = FXCollections.observableArrayList();
+		SortedList<Grocery> sortedMatches = new SortedList<>(matchData);
 		
-		// binds comparators of sorted list with that of table view
+		// binds comparators of sorted lists with that of table view
 		sortedList.comparatorProperty().bind(tableView.comparatorProperty());
+		sortedMatches.comparatorProperty().bind(tableView.comparatorProperty());
 		
 		// sets items of table view to be sorted list
 		tableView.setItems(sortedList);
 
-		// sets a change listener to text field to set the filter predicate of filtered list
+		// debounces filter input and evaluates it in the background; only the
+		// latest filter's matches reach matchData, on the FX thread
+		filterPipeline = new FilterPipeline(groceryIndex::candidates, Platform::runLater);
+
+		// keeps the grocery index and the rows of ids in step with tableData
+		// one grocery at a time
+		tableData.addListener((ListChangeListener<Grocery>) change ->
+		{
+			while (change.next())
+			{
+				for (Grocery grocery: change.getRemoved())
+					groceryIndex.remove(grocery);
+				for (Grocery grocery: change.getAddedSubList())
+					groceryIndex.add(grocery);
+			}
+
+			change.reset();
+			indexRows(change);
+
+			if (activeFilter != null)
+				filterPipeline.submit(activeFilter, matches -> timed("filter", matches.size(), () -> matchData.setAll(matches)));
+		});
+
+		// at midnight every "days ago" text moves on by a day: the rows in
+		// sight are redrawn and a days ago filter is looked up again, with
+		// nothing reloaded except a paged table filtered by days ago
+		rolloverListener = today -> Platform.runLater(() ->
+		{
+			tableView.refresh();
+
+			if (activeFilter != null && activeFilter.getColumn() == GroceryFilter.FILTER_COLUMNS.BOUGHT_DAYS_AGO)
+				filterPipeline.submit(activeFilter, matches -> timed("filter", matches.size(), () -> matchData.setAll(matches)));
+
+			if (pagedList != null && pagedList.getFilter().getColumn() == GroceryFilter.FILTER_COLUMNS.BOUGHT_DAYS_AGO
+				&& pagedList.getFilter().isDaysAgo())
+				pagedList.refresh();
+		});
+		FridgeClock.INSTANCE.addRolloverListener(rolloverListener);
+
+		// sets a change listener to text field to look the filter text up in the
+		// grocery index, touching only the matching groceries
 		filterTF.textProperty().addListener((observable, oldValue, newValue) ->
         {
-			filteredList.setPredicate(grocery ->
+			// a paged table is filtered by the database
+			if (pagedList != null)
 			{
-				if (newValue == null || newValue.isEmpty())
-				{
-					return true;
-				}
+				pagedList.setFilter(new GroceryFilter(filterCB.getValue(), newValue, cb.isSelected()));
+				return;
+			}
 
-				Enum selected = filterCB.getValue();
-				String filterString = newValue.toUpperCase();
+			if (newValue == null || newValue.isEmpty())
+			{
+				filterPipeline.cancel();
+				activeFilter = null;
+				matchData.clear();
+				tableView.setItems(sortedList);
+				return;
+			}
 
-				if (selected.equals(FILTER_COLUMNS.ITEM))
-				{
-					return grocery.getItemName().toUpperCase().contains(filterString);
-				}
-				else if (selected.equals(FILTER_COLUMNS.SECTION))
-				{
-					return grocery.getSection().toString().toUpperCase().contains(filterString);
-				}
-				else if (selected.equals(FILTER_COLUMNS.BOUGHT_DAYS_AGO) && filterString.matches("[0-9]+") && cb.isSelected() && grocery.getItem().canExpire())
-				{
-					return grocery.getDaysAgo().toUpperCase().contains(filterString);
-				}
-				else if (selected.equals(FILTER_COLUMNS.BOUGHT_DAYS_AGO) && filterString.matches("[0-9]+") && !cb.isSelected())
-				{
-					return grocery.getDaysAgo().toUpperCase().contains(filterString);
-				}
-				else
-				{
-					return false;
-				}
-			});
+			activeFilter = new GroceryFilter(filterCB.getValue(), newValue, cb.isSelected());
+			filterPipeline.submit(activeFilter, matches -> timed("filter", matches.size(), () ->
+			{
+				matchData.setAll(matches);
+				tableView.setItems(sortedMatches);
+			}));
 		});
 
 
@@ -231,12 +340,35 @@ public class FridgeFX extends Application {
 		Button updateBT = new Button("UPDATE ONE");
 		Button deleteBT = new Button("DELETE");
 
-		HBox basicHBox = new HBox(addBT, updateBT, deleteBT);
+		// the groceries past their shelf life
+		expiryLB = new Label();
+		expiryLB.setStyle("-fx-text-fill: firebrick;");
+
+		// STATS button shows or hides the inventory summary
+		Button statsBT = new Button("STATS");
+		statsLB = new Label("Loading...");
+		statsLB.setStyle("-fx-font-size: 16; -fx-padding: 5");
+
+		HBox basicHBox = new HBox(addBT, updateBT, deleteBT, statsBT, expiryLB);
+
+		statsBT.setOnAction(e ->
+		{
+			if (root.getChildren().contains(statsLB))
+				root.getChildren().remove(statsLB);
+			else
+				root.getChildren().add(root.getChildren().indexOf(basicHBox) + 1, statsLB);
+		});
 
 		
 		// Item will list item data from the data source controller list all items method
 		ComboBox<Item> itemCB = new ComboBox<Item>();
-		itemCB.getItems().addAll(fridgeDSC.getAllItems());
+		fridgeAsync.getAllItems().whenCompleteAsync((items, exception) ->
+		{
+			if (exception != null)
+				System.out.println("ERROR: " + unwrap(exception));
+			else
+				itemCB.getItems().addAll(items);
+		}, Platform::runLater);
 		itemCB.setVisibleRowCount(4);
 		
 		Label itemLB = new Label("Item");
@@ -310,30 +442,52 @@ public class FridgeFX extends Application {
 				alert.getDialogPane().setMinHeight(Region.USE_PREF_SIZE);
 
 				alert.showAndWait();
+				return;
             }
 
             Grocery g = tableView.getSelectionModel().getSelectedItem();
             int id = g.getId();
 
-            try
-            {
-				fridgeDSC.useGrocery(id);
-				tableData.clear();
-				tableData.addAll(fridgeDSC.getAllGroceries());
-            }
-            catch (Exception exception)
-            {
-				System.out.println(exception.getMessage());
-				Alert alert = new Alert(Alert.AlertType.ERROR);
+			// written behind: shown used now, written with the clicks that follow
+			if (useBuffer != null)
+			{
+				try
+				{
+					int selectedIndex = tableView.getSelectionModel().getSelectedIndex();
+					Grocery used = useBuffer.use(g);
+					usedRows.put(id, used);
+					applyChange(tableData, GroceryChange.updated(used, -1), cb.isSelected());
 
-				alert.setTitle("Error Dialog");
-				alert.setHeaderText("An error occured:");
-				alert.setContentText(exception.toString() + "[ERROR] Use DELETE instead.");
-				alert.getDialogPane().setMinHeight(Region.USE_PREF_SIZE);
+					// by index, as finding the row by value would page in
+					// every row of a paged table
+					tableView.getSelectionModel().select(selectedIndex);
+				}
+				catch (Exception exception)
+				{
+					System.out.println(exception.getMessage());
+					showUseError(exception.toString());
+				}
+				return;
+			}
 
-				alert.showAndWait();
-            }
+			mutation(fridgeAsync.useGrocery(id)).whenCompleteAsync((change, exception) ->
+            {
+				if (exception == null)
+				{
+					applyChange(tableData, change, cb.isSelected());
+					return;
+				}
+
+				System.out.println(unwrap(exception).getMessage());
+				showUseError(unwrap(exception).toString());
+            }, Platform::runLater);
         });
+
+		if (WRITE_BEHIND)
+		{
+			useBuffer = new WriteBehindBuffer(fridgeDSC, WRITE_BEHIND_FLUSH_MILLIS,
+				flush -> flushed(tableData, cb, flush), Platform::runLater);
+		}
 		
 		// DELETE button action check to see if a table view row has been selected first before doing their
 		// action; uses an Alert confirmation
@@ -350,16 +504,13 @@ public class FridgeFX extends Application {
             Optional<ButtonType> result = alert.showAndWait();
             if (result.get() == ButtonType.OK)
             {
-				try
+				mutation(fridgeAsync.removeGrocery(g.getId())).whenCompleteAsync((change, exception) ->
 				{
-					fridgeDSC.removeGrocery(g.getId());
-					tableData.clear();
-					tableData.addAll(fridgeDSC.getAllGroceries());
-				}
-				catch (Exception exception)
-				{
-					System.out.println(exception.getMessage());
-				}
+					if (exception != null)
+						System.out.println(unwrap(exception).getMessage());
+					else
+						applyChange(tableData, change, cb.isSelected());
+				}, Platform::runLater);
             }
         });
 
@@ -427,16 +578,13 @@ public class FridgeFX extends Application {
             Optional<ButtonType> result = alert.showAndWait();
             if (result.get() == ButtonType.OK)
             {
-				try
+				mutation(fridgeAsync.addGrocery(itemName, quantity, section)).whenCompleteAsync((change, exception) ->
 				{
-					fridgeDSC.addGrocery(itemName, quantity, section);
-					tableData.clear();
-					tableData.addAll(fridgeDSC.getAllGroceries());
-				}
-				catch (Exception exception)
-				{
-					System.out.println(exception.getMessage());
-				}
+					if (exception != null)
+						System.out.println(unwrap(exception).getMessage());
+					else
+						applyChange(tableData, change, cb.isSelected());
+				}, Platform::runLater);
 
 				itemCB.setValue(null);
 				sectionCB.setValue(null);
@@ -454,6 +602,49 @@ public class FridgeFX extends Application {
             root.getChildren().removeAll(addItemHBox, clearSaveHBox);
         });
 
+
+		// the change version is read before the first load, so every change
+		// the load misses is newer than it and comes with the first poll
+		CompletableFuture<Integer> counting = fridgeAsync.getChangeVersion().handleAsync((version, exception) ->
+		{
+			if (exception != null)
+				System.out.println("ERROR: " + unwrap(exception));
+			else
+			{
+				startSync(tableData, cb, version);
+				loadExpiry();
+				loadSummary();
+			}
+
+			return null;
+		}, Platform::runLater).thenCompose(ignored -> fridgeAsync.countGroceries());
+
+		// small tables are loaded whole; big ones are paged in as the user
+		// scrolls, sorted by the database
+		counting.whenCompleteAsync((count, exception) ->
+		{
+			if (exception != null || count <= PAGED_TABLE_THRESHOLD)
+			{
+				loadGroceries(tableData, false);
+				return;
+			}
+
+			pagedList = new PagedGroceryList(fridgeAsync);
+			tableView.setItems(pagedList);
+			tableView.setSortPolicy(table ->
+			{
+				TableColumn<Grocery, ?> column = table.getSortOrder().isEmpty() ? null : table.getSortOrder().get(0);
+				FridgeDSC.SORT_COLUMN sort = column != null ? (FridgeDSC.SORT_COLUMN) column.getUserData() : FridgeDSC.SORT_COLUMN.ID;
+				boolean ascending = column == null || column.getSortType() == TableColumn.SortType.ASCENDING;
+
+				// fewer days ago means a later date
+				if (column == daysAgoColumn)
+					ascending = !ascending;
+
+				pagedList.setSort(sort, ascending);
+				return true;
+			});
+		}, Platform::runLater);
 			
 		root.getChildren().addAll(filterHBox, tableView, basicHBox);
 
@@ -466,8 +657,549 @@ public class FridgeFX extends Application {
 		stage.setScene(scene);
 	}
 
+	// loads groceries in the background and puts them in tableData on the FX
+	// thread; a newer load cancels the one still in flight; the expiry filter
+	// runs in the database so only expiring rows are sent over
+	private void loadGroceries(ObservableList<Grocery> tableData, boolean expiryOnly) {
+		cancelLoading();
+
+		CompletableFuture<List<Grocery>> load =
+			fridgeAsync.getGroceries(new GroceryFilter(GroceryFilter.FILTER_COLUMNS.ITEM, "", expiryOnly));
+		loading = load;
+		loadingPI.setVisible(true);
+		stopBT.setVisible(true);
+
+		load.whenCompleteAsync((groceries, exception) ->
+		{
+			// superseded or stopped; the newer load owns the table now
+			if (load != loading)
+				return;
+
+			loading = null;
+			loadingPI.setVisible(false);
+			stopBT.setVisible(false);
+
+			if (exception != null)
+				System.out.println("ERROR: " + unwrap(exception));
+			else
+			{
+				timed("load", groceries.size(), () -> tableData.setAll(groceries));
+				syncLoads++;
+			}
+		}, Platform::runLater);
+	}
+
+	// fills the expiry engine with the expiring groceries, streamed in on
+	// their own as a paged table holds only the rows in sight; changes after
+	// this keep the engine up to date
+	private void loadExpiry() {
+		if (expiryEngine != null)
+			expiryEngine.stop();
+
+		ExpiryEngine engine = new ExpiryEngine(ExpiryEngine.shelfLife(config()), groceries -> showDue(), Platform::runLater);
+		expiryEngine = engine;
+		engine.start();
+
+		fridgeAsync.withGroceries(new GroceryFilter(GroceryFilter.FILTER_COLUMNS.ITEM, "", true), groceries ->
+		{
+			engine.load(groceries::iterator);
+			return engine.size();
+		}).whenCompleteAsync((count, exception) ->
+		{
+			if (exception != null)
+				System.out.println("ERROR: " + unwrap(exception));
+			else
+				showDue();
+		}, Platform::runLater);
+	}
+
+	// shows the due groceries, soonest due first
+	private void showDue() {
+		List<Grocery> due = expiryEngine.getDue();
+		StringBuilder text = new StringBuilder();
+
+		for (Grocery grocery: due)
+		{
+			if (text.length() > 0)
+				text.append(", ");
+			if (text.length() > 60)
+			{
+				text.append("...");
+				break;
+			}
+			text.append(grocery.getItemName()).append(" (").append(grocery.getId()).append(")");
+		}
+
+		expiryLB.setText(due.isEmpty() ? "" : " Expired: " + text);
+	}
+
+	// adds the inventory summary up again in the database; a newer load
+	// supersedes the one in flight, and polls wait for it, so none of the
+	// deltas after its version is missed
+	private void loadSummary() {
+		summaryWanted = false;
+
+		CompletableFuture<InventorySummary> load = fridgeAsync.getInventorySummary();
+		summarizing = load;
+
+		load.whenCompleteAsync((summary, exception) ->
+		{
+			if (load != summarizing)
+				return;
+			summarizing = null;
+
+			if (exception != null)
+				System.out.println("ERROR: " + unwrap(exception));
+			else if (useBuffer != null && !useBuffer.isIdle())
+			{
+				// it misses the uses shown but not written; loaded again
+				// once they are
+				summaryWanted = true;
+			}
+			else
+			{
+				inventorySummary = summary;
+				showSummary();
+			}
+		}, Platform::runLater);
+	}
+
+	private void showSummary() {
+		InventorySummary summary = inventorySummary;
+		LocalDate oldest = summary.getOldestDate();
+
+		StringBuilder text = new StringBuilder();
+		text.append("Groceries: ").append(summary.getGroceries())
+			.append(" (").append(summary.getQuantity()).append(" units)")
+			.append(", expiring: ").append(summary.getExpiringGroceries())
+			.append(", oldest: ").append(oldest != null ? oldest.format(FridgeDSC.DATE_FORMATTER) : "none");
+
+		text.append("\nUnits per section:");
+		for (FridgeDSC.SECTION section: FridgeDSC.SECTION.values())
+			text.append(' ').append(section).append(' ').append(summary.getQuantity(section));
+
+		text.append("\nMost stocked:");
+		for (Map.Entry<String, Long> item: summary.getTopItems(5))
+			text.append(' ').append(item.getKey()).append(" (").append(item.getValue()).append(')');
+
+		statsLB.setText(text.toString());
+	}
+
+	private static FridgeConfig config() {
+		try
+		{
+			return FridgeConfig.load();
+		}
+		catch (IOException exception)
+		{
+			System.out.println("ERROR: " + exception);
+			return new FridgeConfig(new Properties());
+		}
+	}
+
+	// polls for the changes made by other clients from version on
+	private void startSync(ObservableList<Grocery> tableData, CheckBox cb, long version) {
+		syncVersion = version;
+		if (SYNC_INTERVAL_MILLIS <= 0)
+			return;
+
+		syncTimeline = new Timeline(new KeyFrame(Duration.millis(SYNC_INTERVAL_MILLIS), e -> sync(tableData, cb)));
+		syncTimeline.setCycleCount(Timeline.INDEFINITE);
+		syncTimeline.play();
+	}
+
+	private static void showUseError(String message) {
+		Alert alert = new Alert(Alert.AlertType.ERROR);
+
+		alert.setTitle("Error Dialog");
+		alert.setHeaderText("An error occured:");
+		alert.setContentText(message + "[ERROR] Use DELETE instead.");
+		alert.getDialogPane().setMinHeight(Region.USE_PREF_SIZE);
+
+		alert.showAndWait();
+	}
+
+	// shows the groceries a write behind flush wrote as the database has
+	// them, less the uses clicked since; the ones it rejected are rolled
+	// back to how they are now
+	private void flushed(ObservableList<Grocery> tableData, CheckBox cb, WriteBehindBuffer.Flush flush) {
+		syncLoads++;
+
+		// the summary holds the uses already, taken off as they were shown
+		for (GroceryChange change: flush.getChanges())
+		{
+			ownVersions.add(change.getVersion());
+			settleUse(tableData, cb, change.getGrocery());
+			if (inventorySummary != null)
+				inventorySummary.skip(change);
+		}
+
+		// the summary gets the uses rejected back; whatever the database
+		// did to the grocery instead reaches it with the next poll
+		for (Map.Entry<Integer, Grocery> rejected: flush.getRejected().entrySet())
+		{
+			int id = rejected.getKey();
+			Grocery shown = usedRows.get(id);
+			Grocery current = rejected.getValue();
+			Grocery row = current != null ? current : shown;
+
+			if (inventorySummary != null && row != null)
+			{
+				inventorySummary.apply(GroceryChange.updated(row, flush.getCounts().get(id)));
+				showSummary();
+			}
+
+			if (current != null)
+				settleUse(tableData, cb, current);
+			else if (shown != null)
+			{
+				// uses clicked since are rejected with the next flush, and
+				// need the row shown to be given back too
+				if (useBuffer.getPending(id) == 0)
+					usedRows.remove(id);
+				patch(tableData, GroceryChange.deleted(shown), cb.isSelected());
+			}
+		}
+
+		if (!flush.getRejected().isEmpty())
+		{
+			showUseError("[ERROR] Could not use groceries " + flush.getRejected().keySet()
+				+ ": quantity cannot be less than 1 or the grocery is gone. ");
+		}
+
+		// the groceries are unknown; everything shown is read again
+		if (flush.getFailure() != null)
+		{
+			usedRows.clear();
+			if (pagedList != null)
+				pagedList.refresh();
+			else
+				loadGroceries(tableData, cb.isSelected());
+			loadSummary();
+			showUseError(flush.getFailure().toString());
+		}
+		else if (summaryWanted && useBuffer.isIdle())
+			loadSummary();
+	}
+
+	// shows grocery, as the database has it, with the uses still pending
+	// taken off; the summary took them off already when they were shown
+	private void settleUse(ObservableList<Grocery> tableData, CheckBox cb, Grocery grocery) {
+		int id = grocery.getId();
+		int pending = useBuffer.getPending(id);
+
+		Grocery settled = grocery;
+		if (pending > 0 && grocery.getQuantity() - pending >= Grocery.MINIMUM_QUANTITY)
+		{
+			try
+			{
+				settled = new Grocery(id, grocery.getItem(), grocery.getDate(), grocery.getQuantity() - pending, grocery.getSection());
+			}
+			catch (Exception exception)
+			{
+				System.out.println("ERROR: " + exception);
+			}
+		}
+
+		if (pending > 0)
+			usedRows.put(id, settled);
+		else
+			usedRows.remove(id);
+
+		patch(tableData, GroceryChange.updated(settled, 0), cb.isSelected());
+	}
+
+	// pulls the changes since the last poll and patches them into the table;
+	// skipped while a load is in flight, which brings the table up to date
+	// anyway, or while this client's mutations or uses written behind are,
+	// as the rows would be older than the ones shown
+	private void sync(ObservableList<Grocery> tableData, CheckBox cb) {
+		if (syncing != null || loading != null || summarizing != null || mutating > 0 || (useBuffer != null && !useBuffer.isIdle()))
+			return;
+
+		int loads = syncLoads;
+		CompletableFuture<GroceryChangeSet> poll = fridgeAsync.changesSince(syncVersion);
+		syncing = poll;
+
+		poll.whenCompleteAsync((changes, exception) ->
+		{
+			syncing = null;
+
+			if (exception != null)
+			{
+				System.out.println("ERROR: " + unwrap(exception));
+				return;
+			}
+
+			// the table was reloaded or changed by this client meanwhile; the
+			// next poll gets these rows again
+			if (loads != syncLoads || loading != null || summarizing != null || mutating > 0 || (useBuffer != null && !useBuffer.isIdle()))
+				return;
+
+			syncVersion = changes.getVersion();
+			purgeTombstones();
+
+			// deletes this client had not pulled were purged; everything is
+			// read again
+			if (changes.isStale())
+			{
+				ownVersions.clear();
+				reload(tableData, cb);
+				return;
+			}
+
+			// the totals move by every change after their version, this
+			// client's own ones included, which they skip if applied already
+			if (inventorySummary != null)
+			{
+				for (GroceryChange delta: changes.getDeltas())
+					inventorySummary.apply(delta);
+				inventorySummary.advanceTo(changes.getVersion());
+
+				if (!changes.getDeltas().isEmpty())
+					showSummary();
+			}
+
+			changes = othersChanges(changes);
+			if (changes.isEmpty())
+				return;
+
+			// a page cannot tell inserts from updates, so it re-counts
+			if (pagedList != null)
+			{
+				if (expiryEngine != null)
+				{
+					expiryEngine.apply(changes);
+					showDue();
+				}
+				pagedList.refresh();
+				return;
+			}
+
+			for (Grocery grocery: changes.getChanged())
+			{
+				Grocery old = groceryIndex.get(grocery.getId());
+				GroceryChange change = old == null
+					? GroceryChange.inserted(grocery)
+					: GroceryChange.updated(grocery, grocery.getQuantity() - old.getQuantity());
+
+				patch(tableData, change, cb.isSelected());
+			}
+
+			for (int id: changes.getDeletedIds())
+			{
+				Grocery old = groceryIndex.get(id);
+				if (old == null)
+					continue;
+
+				patch(tableData, GroceryChange.deleted(old), cb.isSelected());
+			}
+		}, Platform::runLater);
+	}
+
+	// the changes of a poll less this client's own ones, which it showed
+	// when they were made; versions up to the poll's are not looked for again
+	private GroceryChangeSet othersChanges(GroceryChangeSet changes) {
+		List<Grocery> changed = new ArrayList<Grocery>();
+		for (Grocery grocery: changes.getChanged())
+		{
+			if (!ownVersions.contains(changes.getVersion(grocery.getId())))
+				changed.add(grocery);
+		}
+
+		List<Integer> deletedIds = new ArrayList<Integer>();
+		for (int id: changes.getDeletedIds())
+		{
+			if (!ownVersions.contains(changes.getVersion(id)))
+				deletedIds.add(id);
+		}
+
+		ownVersions.removeIf(version -> version <= changes.getVersion());
+
+		return new GroceryChangeSet(changes.getVersion(), changed, deletedIds);
+	}
+
+	// reports how far this client is and purges the tombstones every client
+	// has pulled, once per SYNC_PURGE_INTERVAL_MILLIS
+	private void purgeTombstones() {
+		long now = System.currentTimeMillis();
+		if (SYNC_PURGE_INTERVAL_MILLIS <= 0 || now - lastPurge < SYNC_PURGE_INTERVAL_MILLIS)
+			return;
+		lastPurge = now;
+
+		fridgeAsync.purgeTombstones(syncClient, syncVersion).whenComplete((purged, exception) ->
+		{
+			if (exception != null)
+				System.out.println("ERROR: " + unwrap(exception));
+		});
+	}
+
+	// reads everything shown again
+	private void reload(ObservableList<Grocery> tableData, CheckBox cb) {
+		if (pagedList != null)
+			pagedList.refresh();
+		else
+			loadGroceries(tableData, cb.isSelected());
+		loadExpiry();
+		loadSummary();
+	}
+
+	// counts a mutation of this client as in flight until its outcome is
+	// on the FX thread, ahead of the caller's own handling of it
+	private <T> CompletableFuture<T> mutation(CompletableFuture<T> future) {
+		mutating++;
+
+		return future.whenCompleteAsync((result, exception) ->
+		{
+			mutating--;
+			syncLoads++;
+		}, Platform::runLater);
+	}
+
+	// patches the one row a mutation of this client touched, and the
+	// inventory summary with its delta
+	private void applyChange(ObservableList<Grocery> tableData, GroceryChange change, boolean expiryOnly) {
+		if (change.getVersion() > 0)
+			ownVersions.add(change.getVersion());
+
+		patch(tableData, change, expiryOnly);
+
+		if (inventorySummary != null)
+		{
+			inventorySummary.apply(change);
+			showSummary();
+		}
+	}
+
+	// patches the one row a change touched; the filtered and sorted lists
+	// on top of tableData only see that single change
+	private void patch(ObservableList<Grocery> tableData, GroceryChange change, boolean expiryOnly) {
+		timed("change", 1, () -> patchChange(tableData, change, expiryOnly));
+
+		if (expiryEngine != null)
+		{
+			expiryEngine.apply(change);
+			showDue();
+		}
+	}
+
+	private void patchChange(ObservableList<Grocery> tableData, GroceryChange change, boolean expiryOnly) {
+		if (pagedList != null)
+		{
+			pagedList.apply(change);
+			return;
+		}
+
+		Grocery grocery = change.getGrocery();
+		int index = indexOfGrocery(change.getId());
+
+		switch (change.getType())
+		{
+			case INSERTED:
+				if (index < 0 && (!expiryOnly || grocery.getItem().canExpire()))
+					tableData.add(grocery);
+				break;
+			case UPDATED:
+				if (index >= 0)
+					tableData.set(index, grocery);
+				break;
+			case DELETED:
+				if (index >= 0)
+					tableData.remove(index);
+				break;
+		}
+	}
+
+	// runs a table update and records how long the FX thread spent on it,
+	// listeners on the table data included, in FridgeMetrics as fx. + operation
+	private static void timed(String operation, long rows, Runnable update) {
+		long start = System.nanoTime();
+		update.run();
+		FridgeMetrics.INSTANCE.record("fx." + operation, System.nanoTime() - start, rows, false);
+	}
+
+	private int indexOfGrocery(int id) {
+		Integer row = rowOfId.get(id);
+		return row != null ? row : -1;
+	}
+
+	// moves the rows of ids along with a change of tableData: an add at the
+	// end or a set touches only its own rows; an insert or remove in the
+	// middle renumbers the rows after it, which the list shifts anyway
+	private void indexRows(ListChangeListener.Change<? extends Grocery> change) {
+		while (change.next())
+		{
+			for (Grocery grocery: change.getRemoved())
+				rowOfId.remove(grocery.getId());
+		}
+
+		change.reset();
+		List<? extends Grocery> rows = change.getList();
+		int renumberFrom = rows.size();
+
+		while (change.next())
+		{
+			for (int row = change.getFrom(); row < change.getTo(); row++)
+				rowOfId.put(rows.get(row).getId(), row);
+
+			if (!change.wasPermutated() && change.getRemovedSize() != change.getAddedSize())
+				renumberFrom = Math.min(renumberFrom, change.getTo());
+		}
+
+		for (int row = renumberFrom; row < rows.size(); row++)
+			rowOfId.put(rows.get(row).getId(), row);
+	}
+
+	// cancels the grocery load in flight, leaving the table as it is
+	private void cancelLoading() {
+		if (loading != null)
+		{
+			loading.cancel(true);
+			loading = null;
+		}
+
+		loadingPI.setVisible(false);
+		stopBT.setVisible(false);
+	}
+
+	// the exception thrown by the data source controller, without the
+	// CompletionException a future wraps it in
+	private static Throwable unwrap(Throwable exception) {
+		if (exception instanceof CompletionException && exception.getCause() != null)
+			return exception.getCause();
+
+		return exception;
+	}
+
 	public void stop() throws Exception 
 	{
+		if (loading != null)
+			loading.cancel(true);
+		if (syncTimeline != null)
+			syncTimeline.stop();
+
+		// the uses clicked last are written before the connections go
+		if (useBuffer != null)
+		{
+			try
+			{
+				useBuffer.close();
+			}
+			catch (Exception exception)
+			{
+				System.out.println("ERROR: " + exception);
+			}
+		}
+
+		fridgeAsync.shutdown();
+		FridgeMetrics.INSTANCE.stop();
+		if (rolloverListener != null)
+			FridgeClock.INSTANCE.removeRolloverListener(rolloverListener);
+		if (expiryEngine != null)
+			expiryEngine.stop();
+		if (filterPipeline != null)
+			filterPipeline.shutdown();
+
 		try
         {
            fridgeDSC.disconnect();
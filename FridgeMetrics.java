@@ -0,0 +1,102 @@
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.management.*;
+
+// metrics of the data source controller calls, pool borrows and table
+// refreshes, shared by the whole application; exposed as an MXBean and,
+// every LOG_INTERVAL_MILLIS, printed as a summary
+public class FridgeMetrics implements FridgeMetricsMXBean {
+
+	public static final String OBJECT_NAME = "FridgeFX:type=FridgeMetrics";
+
+	// how often the summary is printed, 0 to never (-Dfridge.metrics.logInterval)
+	public static final long LOG_INTERVAL_MILLIS = Long.getLong("fridge.metrics.logInterval", 60000);
+
+	public static final FridgeMetrics INSTANCE = new FridgeMetrics();
+
+	private final ConcurrentMap<String, OperationMetrics> operations = new ConcurrentSkipListMap<String, OperationMetrics>();
+	private boolean started;
+	private ScheduledExecutorService logger;
+
+	// the metrics of operation, created on first use
+	public OperationMetrics operation(String name) {
+		OperationMetrics metrics = operations.get(name);
+		return metrics != null ? metrics : operations.computeIfAbsent(name, OperationMetrics::new);
+	}
+
+	public void record(String name, long nanos, long rows, boolean failed) {
+		operation(name).record(nanos, rows, failed);
+	}
+
+	public Map<String, OperationMetrics> getOperations() {
+		return new TreeMap<String, OperationMetrics>(operations);
+	}
+
+	public String getSummary() {
+		StringBuilder summary = new StringBuilder();
+		for (OperationMetrics metrics: operations.values())
+		{
+			if (metrics.getCalls() > 0)
+				summary.append(metrics).append('\n');
+		}
+
+		return summary.toString();
+	}
+
+	public void reset() {
+		for (OperationMetrics metrics: operations.values())
+			metrics.reset();
+	}
+
+	// registers the MXBean with the platform MBean server and starts the
+	// periodic summary; calling it again does nothing
+	public synchronized void start() {
+		if (started)
+			return;
+		started = true;
+
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name))
+				server.registerMBean(this, name);
+		}
+		catch (JMException exception)
+		{
+			System.out.println("ERROR: " + exception);
+		}
+
+		if (LOG_INTERVAL_MILLIS > 0)
+		{
+			logger = Executors.newSingleThreadScheduledExecutor(runnable ->
+			{
+				Thread thread = new Thread(runnable, "FridgeMetrics");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+			logger.scheduleAtFixedRate(() ->
+			{
+				String summary = getSummary();
+				if (!summary.isEmpty())
+					System.out.print("METRICS:\n" + summary);
+			}, LOG_INTERVAL_MILLIS, LOG_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	// stops the periodic summary; the MXBean stays registered
+	public synchronized void stop() {
+		if (logger != null)
+		{
+			logger.shutdownNow();
+			logger = null;
+		}
+		started = false;
+	}
+
+	public String toString() {
+		return getSummary();
+	}
+}
@@ -0,0 +1,13 @@
+import java.util.*;
+
+// what FridgeMetrics shows over JMX, under FridgeMetrics.OBJECT_NAME
+public interface FridgeMetricsMXBean {
+
+	// every operation recorded so far, by name
+	Map<String, OperationMetrics> getOperations();
+
+	// one line per operation, as in the periodic log summary
+	String getSummary();
+
+	void reset();
+}
@@ -1,5 +1,4 @@
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 
 public class Grocery {
 
@@ -11,6 +10,8 @@ public class Grocery {
 	private LocalDate date; // when was it bought or added to fridge; read-only will be set in constructor
 	private int quantity; // read-only, set in constructor, defaults to 1
 	private FridgeDSC.SECTION section;
+	private long epochDay; // date as days since 1970-01-01, for the days ago text
+	private String dateStr; // date formatted, made on first use
 
 	// constructor
 	public Grocery(int id, Item item, LocalDate date, int quantity, FridgeDSC.SECTION section) throws Exception {
@@ -25,9 +26,10 @@ public class Grocery {
 
 		this.id = id;
 		this.item = item;
-		this.date = date != null ? date : LocalDate.now();
+		this.date = date != null ? date : FridgeClock.INSTANCE.today();
 		this.quantity = quantity;
 		this.section = section;
+		this.epochDay = this.date.toEpochDay();
 	}
 
 	// constructor
@@ -37,12 +39,12 @@ public class Grocery {
 
 	// constructor
 	public Grocery(int id, Item item, int quantity, FridgeDSC.SECTION section) throws Exception {
-		this(id, item, LocalDate.now(), quantity, section);
+		this(id, item, null, quantity, section);
 	}
 
 	// constructor
 	public Grocery(int id, Item item, FridgeDSC.SECTION section) throws Exception {
-		this(id, item, LocalDate.now(), MINIMUM_QUANTITY, section);
+		this(id, item, null, MINIMUM_QUANTITY, section);
 	}	
 
 	public int getId() {
@@ -61,14 +63,19 @@ public class Grocery {
 		return this.date;
 	}
 
+	public long getEpochDay() {
+		return this.epochDay;
+	}
+
 	public String getDateStr() {
-		DateTimeFormatter dtf = DateTimeFormatter.ofPattern(FridgeDSC.DATE_FORMAT);
+		if (this.dateStr == null)
+			this.dateStr = this.date.format(FridgeDSC.DATE_FORMATTER);
 
-		return this.date.format(dtf);
+		return this.dateStr;
 	}
 
 	public String getDaysAgo() {
-		return FridgeDSC.calcDaysAgoStr(date);
+		return FridgeDSC.calcDaysAgoStr(epochDay);
 	}
 
 	public int getQuantity() {
@@ -88,12 +95,9 @@ public class Grocery {
 
 
 	public String toString() {
-		DateTimeFormatter dtf = DateTimeFormatter.ofPattern(FridgeDSC.DATE_FORMAT);
-		String daysAgo = FridgeDSC.calcDaysAgoStr(date);
-
 		return "[ id: " + this.id
 			+ ", item: " + this.item.getName() + (item.canExpire() ? " (EXP)":"")
-			+ ", date: " + this.date.format(dtf) + " (" + daysAgo + ")"
+			+ ", date: " + getDateStr() + " (" + getDaysAgo() + ")"
 			+ ", quantity: " + this.quantity
 			+ ", section: " + this.section
 			+ " ]";
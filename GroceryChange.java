@@ -0,0 +1,87 @@
+// describes what a data source controller mutation did to one grocery, so
+// the views holding groceries can patch that row instead of reloading
+public class GroceryChange {
+
+	public enum TYPE {
+		INSERTED, // grocery is the new row
+		UPDATED, // grocery holds the new quantity
+		DELETED // grocery is the row as it was before being deleted
+	};
+
+	private TYPE type;
+	private Grocery grocery;
+	private int quantityDelta; // how much the quantity on hand changed
+	private long version; // change version the mutation took, 0 when not written yet
+
+	// constructor
+	public GroceryChange(TYPE type, Grocery grocery, int quantityDelta) {
+		this(type, grocery, quantityDelta, 0);
+	}
+
+	// constructor
+	public GroceryChange(TYPE type, Grocery grocery, int quantityDelta, long version) {
+		if (type == null)
+			throw new IllegalArgumentException("[ERROR] Change type cannot be null value");
+		if (grocery == null)
+			throw new IllegalArgumentException("[ERROR] Grocery cannot be null value");
+
+		this.type = type;
+		this.grocery = grocery;
+		this.quantityDelta = quantityDelta;
+		this.version = version;
+	}
+
+	public static GroceryChange inserted(Grocery grocery) {
+		return inserted(grocery, 0);
+	}
+
+	public static GroceryChange inserted(Grocery grocery, long version) {
+		return new GroceryChange(TYPE.INSERTED, grocery, grocery.getQuantity(), version);
+	}
+
+	public static GroceryChange updated(Grocery grocery, int quantityDelta) {
+		return updated(grocery, quantityDelta, 0);
+	}
+
+	public static GroceryChange updated(Grocery grocery, int quantityDelta, long version) {
+		return new GroceryChange(TYPE.UPDATED, grocery, quantityDelta, version);
+	}
+
+	public static GroceryChange deleted(Grocery grocery) {
+		return deleted(grocery, 0);
+	}
+
+	public static GroceryChange deleted(Grocery grocery, long version) {
+		return new GroceryChange(TYPE.DELETED, grocery, -grocery.getQuantity(), version);
+	}
+
+	public TYPE getType() {
+		return this.type;
+	}
+
+	public Grocery getGrocery() {
+		return this.grocery;
+	}
+
+	public int getId() {
+		return this.grocery.getId();
+	}
+
+	public int getQuantityDelta() {
+		return this.quantityDelta;
+	}
+
+	// the version the change comes back with in GroceryChangeSet, so the
+	// client that made it can tell its own changes from other clients' ones
+	public long getVersion() {
+		return this.version;
+	}
+
+	public String toString() {
+		return "[ type: " + this.type
+			+ ", delta: " + this.quantityDelta
+			+ ", version: " + this.version
+			+ ", grocery: " + this.grocery
+			+ " ]";
+	}
+}
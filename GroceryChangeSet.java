@@ -0,0 +1,84 @@
+import java.util.*;
+
+// what changed in the grocery table after a change version: the groceries
+// inserted or updated as they are now, and the ids of those deleted; a
+// grocery changed several times shows up once, in its latest state
+public class GroceryChangeSet {
+
+	private long version; // the version this set brings a client up to
+	private List<Grocery> changed;
+	private List<Integer> deletedIds;
+	private Map<Integer, Long> versions; // the version each id was last changed at
+	private List<GroceryChange> deltas; // every change in version order, with its quantity delta
+	private boolean stale;
+
+	// constructor
+	public GroceryChangeSet(long version, List<Grocery> changed, List<Integer> deletedIds) {
+		this(version, changed, deletedIds, new HashMap<Integer, Long>(), new ArrayList<GroceryChange>(), false);
+	}
+
+	// constructor
+	public GroceryChangeSet(long version, List<Grocery> changed, List<Integer> deletedIds, Map<Integer, Long> versions,
+		List<GroceryChange> deltas, boolean stale) {
+		if (changed == null || deletedIds == null || versions == null || deltas == null)
+			throw new IllegalArgumentException("[ERROR] Changes cannot be null value");
+
+		this.version = version;
+		this.changed = Collections.unmodifiableList(changed);
+		this.deletedIds = Collections.unmodifiableList(deletedIds);
+		this.versions = Collections.unmodifiableMap(versions);
+		this.deltas = Collections.unmodifiableList(deltas);
+		this.stale = stale;
+	}
+
+	// the set for a client whose version is older than the tombstones kept,
+	// which has to load everything again instead
+	public static GroceryChangeSet stale(long version) {
+		return new GroceryChangeSet(version, new ArrayList<Grocery>(), new ArrayList<Integer>(), new HashMap<Integer, Long>(),
+			new ArrayList<GroceryChange>(), true);
+	}
+
+	public long getVersion() {
+		return this.version;
+	}
+
+	public List<Grocery> getChanged() {
+		return this.changed;
+	}
+
+	public List<Integer> getDeletedIds() {
+		return this.deletedIds;
+	}
+
+	// the version grocery id was last changed or deleted at, 0 if unknown
+	public long getVersion(int id) {
+		return this.versions.getOrDefault(id, 0L);
+	}
+
+	// each change on its own, as the mutation made it, for totals such as
+	// InventorySummary that move by the quantity deltas
+	public List<GroceryChange> getDeltas() {
+		return this.deltas;
+	}
+
+	// true when deletes since the version asked for were purged already
+	public boolean isStale() {
+		return this.stale;
+	}
+
+	public boolean isEmpty() {
+		return this.changed.isEmpty() && this.deletedIds.isEmpty() && !this.stale;
+	}
+
+	public int size() {
+		return this.changed.size() + this.deletedIds.size();
+	}
+
+	public String toString() {
+		return "[ version: " + this.version
+			+ ", changed: " + this.changed.size()
+			+ ", deleted: " + this.deletedIds
+			+ (this.stale ? ", stale" : "")
+			+ " ]";
+	}
+}
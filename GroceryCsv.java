@@ -0,0 +1,218 @@
+import java.io.BufferedReader;
+import java.time.LocalDate;
+import java.util.*;
+
+// the CSV format groceries are exported and imported in: a header line,
+// then one grocery per record with dates as yyyy-MM-dd, so a file reads the
+// same in every locale; fields holding commas, quotes or line breaks are
+// quoted, with quotes doubled, so a record spans several lines when a
+// quoted field holds a line break
+public class GroceryCsv {
+
+	public static final String[] HEADER = { "id", "item", "date", "quantity", "section", "expires" };
+
+	private final StringBuilder line = new StringBuilder(64);
+
+	// the columns an import needs; id and expires are ignored, as ids are
+	// given by the database and expiry by the item, and date defaults to today
+	private int itemColumn = 1;
+	private int dateColumn = 2;
+	private int quantityColumn = 3;
+	private int sectionColumn = 4;
+
+	// lines read so far, and the line the last record started on
+	private long lines;
+	private long recordLine;
+
+	public static String header() {
+		return String.join(",", HEADER);
+	}
+
+	// the line for one grocery, without the line break; the builder is
+	// reused, so a line allocates only the returned string
+	public String format(int id, String itemName, LocalDate date, int quantity, String section, boolean expires) {
+		line.setLength(0);
+		line.append(id).append(',');
+		appendField(itemName);
+		line.append(',').append(date != null ? date.toString() : "").append(',')
+			.append(quantity).append(',')
+			.append(section).append(',')
+			.append(expires);
+
+		return line.toString();
+	}
+
+	private void appendField(String field) {
+		if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0 && field.indexOf('\r') < 0)
+		{
+			line.append(field);
+			return;
+		}
+
+		line.append('"').append(field.replace("\"", "\"\"")).append('"');
+	}
+
+	// the next record of reader, or null at the end; it runs on over the
+	// lines after it while a quoted field is open, each line break in the
+	// field coming back as \n
+	public String readRecord(BufferedReader reader) throws Exception {
+		String text = reader.readLine();
+		if (text == null)
+			return null;
+
+		recordLine = ++lines;
+		boolean quoted = isOdd(quotes(text));
+		if (!quoted)
+			return text;
+
+		// a doubled quote inside a field counts twice, so an odd number of
+		// quotes on a line opens or closes a field
+		StringBuilder record = new StringBuilder(text);
+		while (quoted)
+		{
+			String next = reader.readLine();
+			if (next == null)
+				throw new Exception("[ERROR] Line " + recordLine + ": quoted field is never closed");
+
+			lines++;
+			record.append('\n').append(next);
+			if (isOdd(quotes(next)))
+				quoted = false;
+		}
+
+		return record.toString();
+	}
+
+	// line the record readRecord returned last started on
+	public long getRecordLine() {
+		return this.recordLine;
+	}
+
+	private static int quotes(String text) {
+		int quotes = 0;
+		for (int i = 0; i < text.length(); i++)
+		{
+			if (text.charAt(i) == '"')
+				quotes++;
+		}
+
+		return quotes;
+	}
+
+	private static boolean isOdd(int count) {
+		return (count & 1) == 1;
+	}
+
+	// reads the column order from a header line, so manifests may leave out
+	// or reorder columns; item, quantity and section are required
+	public void readHeader(String header) throws Exception {
+		List<String> names = split(header);
+		for (int i = 0; i < names.size(); i++)
+			names.set(i, names.get(i).trim().toLowerCase());
+
+		itemColumn = names.indexOf("item");
+		dateColumn = names.indexOf("date");
+		quantityColumn = names.indexOf("quantity");
+		sectionColumn = names.indexOf("section");
+
+		if (itemColumn < 0 || quantityColumn < 0 || sectionColumn < 0)
+			throw new Exception("[ERROR] CSV header needs item, quantity and section columns: " + header);
+	}
+
+	// the grocery line in one CSV record; items holds the item names that
+	// exist, any other name is rejected
+	public GroceryLine parse(String text, Set<String> items) throws Exception {
+		List<String> fields = split(text);
+
+		String itemName = field(fields, itemColumn);
+		if (!items.contains(itemName))
+			throw new Exception("[ERROR] Item Name: " + itemName + " does not exist");
+
+		String quantity = field(fields, quantityColumn).trim();
+		if (!quantity.matches("[0-9]+"))
+			throw new Exception("[ERROR] Quantity must be a number: " + quantity);
+
+		FridgeDSC.SECTION section;
+		try
+		{
+			section = FridgeDSC.SECTION.valueOf(field(fields, sectionColumn).trim().toUpperCase());
+		}
+		catch (IllegalArgumentException exception)
+		{
+			throw new Exception("[ERROR] Unknown section: " + field(fields, sectionColumn));
+		}
+
+		String date = dateColumn >= 0 ? field(fields, dateColumn).trim() : "";
+
+		return new GroceryLine(itemName, Integer.parseInt(quantity), section, date.isEmpty() ? null : LocalDate.parse(date));
+	}
+
+	private static String field(List<String> fields, int column) throws Exception {
+		if (column >= fields.size())
+			throw new Exception("[ERROR] Expected at least " + (column + 1) + " fields, found " + fields.size());
+
+		return fields.get(column);
+	}
+
+	// the fields of one CSV record
+	static List<String> split(String text) {
+		List<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+
+		for (int i = 0; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+
+			if (quoted)
+			{
+				if (c != '"')
+					field.append(c);
+				else if (i + 1 < text.length() && text.charAt(i + 1) == '"')
+					field.append(text.charAt(++i));
+				else
+					quoted = false;
+			}
+			else if (c == '"')
+				quoted = true;
+			else if (c == ',')
+			{
+				fields.add(field.toString());
+				field.setLength(0);
+			}
+			else
+				field.append(c);
+		}
+		fields.add(field.toString());
+
+		return fields;
+	}
+
+	// exports or imports the groceries of the database fridge.properties
+	// points at, e.g. java GroceryCsv export groceries.csv
+	public static void main(String [] args) throws Exception {
+		if (args.length != 2 || !(args[0].equals("export") || args[0].equals("import")))
+		{
+			System.out.println("usage: java GroceryCsv export|import <file>");
+			return;
+		}
+
+		FridgeDSC fridgeDSC = new FridgeDSC();
+		FridgeDSC.connect();
+
+		try
+		{
+			java.nio.file.Path file = java.nio.file.Paths.get(args[1]);
+			long start = System.nanoTime();
+			long rows = args[0].equals("export")
+				? fridgeDSC.exportGroceries(file)
+				: fridgeDSC.importGroceries(file, FridgeDSC.BATCH_SIZE);
+
+			System.out.printf("%sed %d groceries in %.1f ms%n", args[0], rows, (System.nanoTime() - start) / 1e6);
+		}
+		finally
+		{
+			FridgeDSC.disconnect();
+		}
+	}
+}
@@ -0,0 +1,132 @@
+// what the user filters the groceries by: the text typed for one of the
+// FILTER_COLUMNS and the "Show Expiry Only" flag; the data source controller
+// turns it into a WHERE clause so only matching rows leave the database
+public class GroceryFilter {
+
+	// used as ChoiceBox value for filter
+	public enum FILTER_COLUMNS {
+		ITEM,
+		SECTION,
+		BOUGHT_DAYS_AGO
+	};
+
+	// longest number of days BOUGHT_DAYS_AGO accepts
+	public static final int MAX_DAYS_AGO_DIGITS = 6;
+
+	// matches every grocery
+	public static final GroceryFilter NONE = new GroceryFilter(FILTER_COLUMNS.ITEM, "", false);
+
+	private FILTER_COLUMNS column;
+	private String text; // upper-cased, never null
+	private boolean expiryOnly;
+	private boolean prefix; // item names must start with text rather than contain it
+	private boolean daysAgo; // text is a number of days, of at most MAX_DAYS_AGO_DIGITS
+
+	// constructor
+	public GroceryFilter(FILTER_COLUMNS column, String text, boolean expiryOnly, boolean prefix) {
+		if (column == null)
+			throw new IllegalArgumentException("[ERROR] Filter column cannot be null value");
+
+		this.column = column;
+		this.text = text != null ? text.toUpperCase() : "";
+		this.expiryOnly = expiryOnly;
+		this.prefix = prefix;
+		this.daysAgo = isNumber(this.text) && this.text.length() <= MAX_DAYS_AGO_DIGITS;
+	}
+
+	// constructor
+	public GroceryFilter(FILTER_COLUMNS column, String text, boolean expiryOnly) {
+		this(column, text, expiryOnly, false);
+	}
+
+	public FILTER_COLUMNS getColumn() {
+		return this.column;
+	}
+
+	public String getText() {
+		return this.text;
+	}
+
+	public boolean hasText() {
+		return !this.text.isEmpty();
+	}
+
+	public boolean isExpiryOnly() {
+		return this.expiryOnly;
+	}
+
+	public boolean isPrefix() {
+		return this.prefix;
+	}
+
+	// true when text is a number of days, the only text BOUGHT_DAYS_AGO accepts
+	public boolean isDaysAgo() {
+		return this.daysAgo;
+	}
+
+	// the epoch day groceries bought text days ago were bought on, as of today;
+	// only meaningful when isDaysAgo()
+	public long getBoughtEpochDay() {
+		return FridgeClock.INSTANCE.todayEpochDay() - Long.parseLong(text);
+	}
+
+	// true when the table filter keeps grocery: its item name or section
+	// contains the text, or it was bought exactly the number of days typed
+	// ago, 0 being today; the database filters by the same rule
+	public boolean matches(Grocery grocery) {
+		if (expiryOnly && !grocery.getItem().canExpire())
+			return false;
+
+		if (!hasText())
+			return true;
+
+		switch (column)
+		{
+			case ITEM:
+				String name = grocery.getItemName().toUpperCase();
+				return prefix ? name.startsWith(text) : name.contains(text);
+			case SECTION:
+				return grocery.getSection().toString().contains(text);
+			case BOUGHT_DAYS_AGO:
+				return daysAgo && grocery.getEpochDay() == getBoughtEpochDay();
+			default:
+				return false;
+		}
+	}
+
+	private static boolean isNumber(String text) {
+		if (text.isEmpty())
+			return false;
+
+		for (int i = 0; i < text.length(); i++)
+		{
+			if (!Character.isDigit(text.charAt(i)))
+				return false;
+		}
+
+		return true;
+	}
+
+	public boolean equals(Object other) {
+		if (!(other instanceof GroceryFilter))
+			return false;
+
+		GroceryFilter filter = (GroceryFilter) other;
+		return column == filter.column
+			&& text.equals(filter.text)
+			&& expiryOnly == filter.expiryOnly
+			&& prefix == filter.prefix;
+	}
+
+	public int hashCode() {
+		return (column.hashCode() * 31 + text.hashCode()) * 4 + (expiryOnly ? 2 : 0) + (prefix ? 1 : 0);
+	}
+
+	public String toString() {
+		return "[ column: " + this.column
+			+ ", text: " + this.text
+			+ ", expiry only: " + this.expiryOnly
+			+ (this.prefix ? ", prefix" : "")
+			+ " ]";
+	}
+}
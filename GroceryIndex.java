@@ -0,0 +1,199 @@
+import java.time.LocalDate;
+import java.util.*;
+
+// secondary indexes over the groceries loaded in the table, kept up to date
+// one grocery at a time, so a filter only touches the groceries it matches:
+// sections by SECTION, item names by their n-grams and purchase dates by day
+public class GroceryIndex {
+
+	// longest n-gram indexed; longer filter text is looked up by its n-grams
+	// and then checked against the names found
+	public static final int MAX_GRAM = 3;
+
+	private final Map<Integer, Grocery> byId = new HashMap<Integer, Grocery>();
+	private final EnumMap<FridgeDSC.SECTION, Set<Integer>> bySection =
+		new EnumMap<FridgeDSC.SECTION, Set<Integer>>(FridgeDSC.SECTION.class);
+
+	// upper-cased item names, and every n-gram of them up to MAX_GRAM long
+	private final Map<String, Set<Integer>> byName = new HashMap<String, Set<Integer>>();
+	private final Map<String, Set<String>> namesByGram = new HashMap<String, Set<String>>();
+
+	// purchase dates as epoch days
+	private final Map<Long, Set<Integer>> byDay = new HashMap<Long, Set<Integer>>();
+
+	// adds a grocery, replacing the one with the same id
+	public synchronized void add(Grocery grocery) {
+		remove(grocery.getId());
+
+		int id = grocery.getId();
+		byId.put(id, grocery);
+		bySection.computeIfAbsent(grocery.getSection(), section -> new HashSet<Integer>()).add(id);
+		byDay.computeIfAbsent(grocery.getEpochDay(), day -> new HashSet<Integer>()).add(id);
+
+		String name = grocery.getItemName().toUpperCase();
+		Set<Integer> ids = byName.get(name);
+		if (ids == null)
+		{
+			ids = new HashSet<Integer>();
+			byName.put(name, ids);
+
+			for (String gram: grams(name))
+				namesByGram.computeIfAbsent(gram, g -> new HashSet<String>()).add(name);
+		}
+		ids.add(id);
+	}
+
+	// removes grocery unless it was already replaced by a newer one with its id
+	public synchronized void remove(Grocery grocery) {
+		if (byId.get(grocery.getId()) == grocery)
+			remove(grocery.getId());
+	}
+
+	public synchronized void remove(int id) {
+		Grocery grocery = byId.remove(id);
+		if (grocery == null)
+			return;
+
+		removeFrom(bySection, grocery.getSection(), id);
+		removeFrom(byDay, grocery.getEpochDay(), id);
+
+		String name = grocery.getItemName().toUpperCase();
+		if (removeFrom(byName, name, id))
+		{
+			for (String gram: grams(name))
+				removeFrom(namesByGram, gram, name);
+		}
+	}
+
+	public synchronized void clear() {
+		byId.clear();
+		bySection.clear();
+		byName.clear();
+		namesByGram.clear();
+		byDay.clear();
+	}
+
+	public synchronized int size() {
+		return byId.size();
+	}
+
+	public synchronized Grocery get(int id) {
+		return byId.get(id);
+	}
+
+	// the groceries the filter matches, the same ones GroceryFilter.matches keeps
+	public synchronized List<Grocery> match(GroceryFilter filter) {
+		List<Grocery> matches = new ArrayList<Grocery>();
+
+		for (Grocery grocery: candidates(filter))
+		{
+			if (filter.matches(grocery))
+				matches.add(grocery);
+		}
+
+		return matches;
+	}
+
+	// the groceries that may match the filter, found through the indexes:
+	// every match is in there, but long item text and the expiry flag still
+	// have to be checked with GroceryFilter.matches
+	public synchronized List<Grocery> candidates(GroceryFilter filter) {
+		List<Grocery> matches = new ArrayList<Grocery>();
+
+		if (!filter.hasText())
+		{
+			matches.addAll(byId.values());
+			return matches;
+		}
+
+		String text = filter.getText();
+
+		switch (filter.getColumn())
+		{
+			case ITEM:
+				for (String name: candidateNames(text))
+					addMatches(matches, byName.get(name));
+				break;
+
+			case SECTION:
+				for (Map.Entry<FridgeDSC.SECTION, Set<Integer>> entry: bySection.entrySet())
+				{
+					if (entry.getKey().toString().contains(text))
+						addMatches(matches, entry.getValue());
+				}
+				break;
+
+			case BOUGHT_DAYS_AGO:
+				// a single day, looked up directly
+				if (filter.isDaysAgo() && byDay.containsKey(filter.getBoughtEpochDay()))
+					addMatches(matches, byDay.get(filter.getBoughtEpochDay()));
+				break;
+		}
+
+		return matches;
+	}
+
+	// names that may contain text: exact for short text, a superset otherwise
+	private Collection<String> candidateNames(String text) {
+		if (text.length() <= MAX_GRAM)
+			return namesByGram.getOrDefault(text, Collections.<String>emptySet());
+
+		// the rarest n-gram of the text gives the fewest names to check
+		Set<String> smallest = null;
+		for (int i = 0; i + MAX_GRAM <= text.length(); i++)
+		{
+			Set<String> names = namesByGram.getOrDefault(text.substring(i, i + MAX_GRAM), Collections.<String>emptySet());
+			if (smallest == null || names.size() < smallest.size())
+				smallest = names;
+		}
+
+		return smallest;
+	}
+
+	private void addMatches(List<Grocery> matches, Set<Integer> ids) {
+		for (int id: ids)
+			matches.add(byId.get(id));
+	}
+
+	private static Set<String> grams(String name) {
+		Set<String> grams = new HashSet<String>();
+
+		for (int length = 1; length <= MAX_GRAM; length++)
+		{
+			for (int i = 0; i + length <= name.length(); i++)
+				grams.add(name.substring(i, i + length));
+		}
+
+		return grams;
+	}
+
+	// removes value from the set at key, dropping the set once empty; true if dropped
+	private static <K, V> boolean removeFrom(Map<K, Set<V>> map, K key, V value) {
+		Set<V> values = map.get(key);
+		if (values == null)
+			return false;
+
+		values.remove(value);
+		if (!values.isEmpty())
+			return false;
+
+		map.remove(key);
+		return true;
+	}
+
+	// To perform some quick tests
+	public static void main(String [] args) throws Exception {
+		GroceryIndex index = new GroceryIndex();
+		index.add(new Grocery(1, new Item("Milk", false), FridgeDSC.SECTION.COOLING));
+		index.add(new Grocery(2, new Item("Frozen Yogurt", false), LocalDate.now().minusDays(12), FridgeDSC.SECTION.FREEZER));
+		index.add(new Grocery(3, new Item("Fish", true), LocalDate.now().minusDays(2), FridgeDSC.SECTION.MEAT));
+
+		System.out.println(index.match(new GroceryFilter(GroceryFilter.FILTER_COLUMNS.ITEM, "yog", false)));
+		System.out.println(index.match(new GroceryFilter(GroceryFilter.FILTER_COLUMNS.ITEM, "n yogu", false)));
+		System.out.println(index.match(new GroceryFilter(GroceryFilter.FILTER_COLUMNS.SECTION, "e", false)));
+		System.out.println(index.match(new GroceryFilter(GroceryFilter.FILTER_COLUMNS.BOUGHT_DAYS_AGO, "2", true)));
+
+		index.remove(2);
+		System.out.println(index.match(new GroceryFilter(GroceryFilter.FILTER_COLUMNS.ITEM, "yog", false)));
+	}
+}
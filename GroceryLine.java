@@ -0,0 +1,54 @@
+import java.time.LocalDate;
+
+// one line of a delivery manifest: a grocery still to be added, so it has no id yet
+public class GroceryLine {
+
+	private String itemName;
+	private int quantity;
+	private FridgeDSC.SECTION section;
+	private LocalDate date; // when it was bought; defaults to today
+
+	// constructor
+	public GroceryLine(String itemName, int quantity, FridgeDSC.SECTION section, LocalDate date) throws Exception {
+		if (itemName == null)
+			throw new Exception("[ERROR] Item name cannot be null value");
+		if (section == null)
+			throw new Exception("[ERROR] Section cannot be null value");
+		if (quantity < Grocery.MINIMUM_QUANTITY)
+			throw new Exception("[ERROR] Quantity value cannot be less than 1");
+
+		this.itemName = itemName;
+		this.quantity = quantity;
+		this.section = section;
+		this.date = date != null ? date : FridgeClock.INSTANCE.today();
+	}
+
+	// constructor
+	public GroceryLine(String itemName, int quantity, FridgeDSC.SECTION section) throws Exception {
+		this(itemName, quantity, section, null);
+	}
+
+	public String getItemName() {
+		return this.itemName;
+	}
+
+	public int getQuantity() {
+		return this.quantity;
+	}
+
+	public FridgeDSC.SECTION getSection() {
+		return this.section;
+	}
+
+	public LocalDate getDate() {
+		return this.date;
+	}
+
+	public String toString() {
+		return "[ item: " + this.itemName
+			+ ", quantity: " + this.quantity
+			+ ", section: " + this.section
+			+ ", date: " + this.date
+			+ " ]";
+	}
+}
@@ -0,0 +1,325 @@
+import java.time.LocalDate;
+import java.util.*;
+
+// read only groceries stored column by column in primitive arrays: ids,
+// quantities and purchase dates as int, sections as byte ordinals, and
+// items as codes into one shared Item table; a row costs about 17 bytes
+// instead of a Grocery, its LocalDate and their object headers, and a
+// Grocery is only made for a row someone asks for
+public class GrocerySnapshot {
+
+	private static final FridgeDSC.SECTION[] SECTIONS = FridgeDSC.SECTION.values();
+
+	// rows whose Grocery views asList() keeps around, enough for the rows in sight
+	public static final int VIEW_CACHE_SIZE = 256;
+
+	private final int size;
+	private final int[] ids;
+	private final int[] quantities;
+	private final int[] epochDays;
+	private final byte[] sections;
+	private final int[] itemCodes;
+	private final Item[] items;
+	private final boolean sortedById;
+
+	// fills a snapshot a row at a time
+	public static class Builder {
+		private int size;
+		private int[] ids;
+		private int[] quantities;
+		private int[] epochDays;
+		private byte[] sections;
+		private int[] itemCodes;
+		private final List<Item> items = new ArrayList<Item>();
+		private final Map<String, Integer> codes = new HashMap<String, Integer>();
+		private boolean sortedById = true;
+
+		// constructor
+		public Builder(int capacity) {
+			capacity = Math.max(capacity, 16);
+			ids = new int[capacity];
+			quantities = new int[capacity];
+			epochDays = new int[capacity];
+			sections = new byte[capacity];
+			itemCodes = new int[capacity];
+		}
+
+		// constructor
+		public Builder() {
+			this(1024);
+		}
+
+		// the code of the item called name, adding it on first sight
+		public int item(String name, boolean expires) {
+			Integer code = codes.get(name);
+			if (code == null)
+			{
+				code = items.size();
+				items.add(new Item(name, expires));
+				codes.put(name, code);
+			}
+
+			return code;
+		}
+
+		public int item(Item item) {
+			return item(item.getName(), item.canExpire());
+		}
+
+		public Builder add(int id, int itemCode, long epochDay, int quantity, FridgeDSC.SECTION section) {
+			if (itemCode < 0 || itemCode >= items.size())
+				throw new IllegalArgumentException("[ERROR] Unknown item code: " + itemCode);
+
+			if (size == ids.length)
+				grow();
+
+			if (size > 0 && id <= ids[size - 1])
+				sortedById = false;
+
+			ids[size] = id;
+			quantities[size] = quantity;
+			epochDays[size] = Math.toIntExact(epochDay);
+			sections[size] = (byte) section.ordinal();
+			itemCodes[size] = itemCode;
+			size++;
+
+			return this;
+		}
+
+		public Builder add(Grocery grocery) {
+			return add(grocery.getId(), item(grocery.getItem()), grocery.getEpochDay(), grocery.getQuantity(), grocery.getSection());
+		}
+
+		public int size() {
+			return this.size;
+		}
+
+		public GrocerySnapshot build() {
+			return new GrocerySnapshot(size, Arrays.copyOf(ids, size), Arrays.copyOf(quantities, size),
+				Arrays.copyOf(epochDays, size), Arrays.copyOf(sections, size), Arrays.copyOf(itemCodes, size),
+				items.toArray(new Item[0]), sortedById);
+		}
+
+		private void grow() {
+			int capacity = ids.length + (ids.length >> 1);
+			ids = Arrays.copyOf(ids, capacity);
+			quantities = Arrays.copyOf(quantities, capacity);
+			epochDays = Arrays.copyOf(epochDays, capacity);
+			sections = Arrays.copyOf(sections, capacity);
+			itemCodes = Arrays.copyOf(itemCodes, capacity);
+		}
+	}
+
+	private GrocerySnapshot(int size, int[] ids, int[] quantities, int[] epochDays, byte[] sections, int[] itemCodes,
+		Item[] items, boolean sortedById) {
+		this.size = size;
+		this.ids = ids;
+		this.quantities = quantities;
+		this.epochDays = epochDays;
+		this.sections = sections;
+		this.itemCodes = itemCodes;
+		this.items = items;
+		this.sortedById = sortedById;
+	}
+
+	public static GrocerySnapshot of(Collection<Grocery> groceries) {
+		Builder builder = new Builder(groceries.size());
+		for (Grocery grocery: groceries)
+			builder.add(grocery);
+
+		return builder.build();
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public int getId(int row) {
+		return ids[check(row)];
+	}
+
+	public int getQuantity(int row) {
+		return quantities[check(row)];
+	}
+
+	public long getEpochDay(int row) {
+		return epochDays[check(row)];
+	}
+
+	public FridgeDSC.SECTION getSection(int row) {
+		return SECTIONS[sections[check(row)]];
+	}
+
+	public Item getItem(int row) {
+		return items[itemCodes[check(row)]];
+	}
+
+	public String getItemName(int row) {
+		return getItem(row).getName();
+	}
+
+	public String getDaysAgo(int row) {
+		return FridgeDSC.calcDaysAgoStr(getEpochDay(row));
+	}
+
+	// number of distinct items the rows share
+	public int getItemCount() {
+		return items.length;
+	}
+
+	// row holding the grocery with id, or -1
+	public int indexOf(int id) {
+		if (sortedById)
+		{
+			int row = Arrays.binarySearch(ids, id);
+			return row >= 0 ? row : -1;
+		}
+
+		for (int row = 0; row < size; row++)
+		{
+			if (ids[row] == id)
+				return row;
+		}
+
+		return -1;
+	}
+
+	// a new Grocery holding row
+	public Grocery get(int row) {
+		check(row);
+
+		try
+		{
+			return new Grocery(ids[row], items[itemCodes[row]], LocalDate.ofEpochDay(epochDays[row]),
+				quantities[row], SECTIONS[sections[row]]);
+		}
+		catch (Exception exception)
+		{
+			throw new IllegalStateException("[ERROR] Invalid grocery in row " + row, exception);
+		}
+	}
+
+	// a copy with row holding grocery instead, which must have the same id;
+	// the snapshot itself never changes
+	public GrocerySnapshot with(int row, Grocery grocery) {
+		if (grocery.getId() != getId(row))
+			throw new IllegalArgumentException("[ERROR] Row " + row + " holds grocery id: " + ids[row] + ", not " + grocery.getId());
+
+		Item[] withItems = items;
+		int itemCode = -1;
+		for (int code = 0; code < items.length; code++)
+		{
+			if (items[code].getName().equals(grocery.getItemName()))
+				itemCode = code;
+		}
+		if (itemCode < 0)
+		{
+			withItems = Arrays.copyOf(items, items.length + 1);
+			itemCode = items.length;
+			withItems[itemCode] = grocery.getItem();
+		}
+
+		GrocerySnapshot copy = new GrocerySnapshot(size, ids, quantities.clone(), epochDays.clone(), sections.clone(),
+			itemCodes.clone(), withItems, sortedById);
+		copy.quantities[row] = grocery.getQuantity();
+		copy.epochDays[row] = Math.toIntExact(grocery.getEpochDay());
+		copy.sections[row] = (byte) grocery.getSection().ordinal();
+		copy.itemCodes[row] = itemCode;
+
+		return copy;
+	}
+
+	// read only list of the rows, making each Grocery when it is asked for
+	// and keeping the last VIEW_CACHE_SIZE of them, so a TableView over it
+	// only ever holds the rows in sight
+	public List<Grocery> asList() {
+		return new Views();
+	}
+
+	private class Views extends AbstractList<Grocery> implements RandomAccess {
+		private final Grocery[] cache = new Grocery[VIEW_CACHE_SIZE];
+		private final int[] cachedRows = new int[VIEW_CACHE_SIZE];
+
+		Views() {
+			Arrays.fill(cachedRows, -1);
+		}
+
+		public Grocery get(int row) {
+			int slot = Math.floorMod(row, VIEW_CACHE_SIZE);
+			if (cachedRows[slot] != row)
+			{
+				cache[slot] = GrocerySnapshot.this.get(row);
+				cachedRows[slot] = row;
+			}
+
+			return cache[slot];
+		}
+
+		public int size() {
+			return size;
+		}
+	}
+
+	// bytes held by the arrays and the shared items, headers left out
+	public long estimateBytes() {
+		long bytes = (long) size * (4 + 4 + 4 + 1 + 4);
+		for (Item item: items)
+			bytes += 16 + 2L * item.getName().length();
+
+		return bytes;
+	}
+
+	private int check(int row) {
+		if (row < 0 || row >= size)
+			throw new IndexOutOfBoundsException("[ERROR] Row: " + row + ", size: " + size);
+
+		return row;
+	}
+
+	public String toString() {
+		return "[ rows: " + this.size
+			+ ", items: " + this.items.length
+			+ ", bytes: " + estimateBytes()
+			+ " ]";
+	}
+
+	// To perform some quick tests: compares the heap taken by rows groceries
+	// held as a List<Grocery> with the same rows in a snapshot
+	public static void main(String [] args) throws Exception {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+		String[] names = { "Beef", "Broccoli", "Cabbage", "Fish", "Frozen Yogurt", "Cottage Cheese",
+			"Milk", "Oranges", "Paddle Pop", "Pecorino", "Tangerines", "Tofu" };
+		Item[] items = new Item[names.length];
+		for (int i = 0; i < names.length; i++)
+			items[i] = new Item(names[i], i % 2 == 0);
+
+		long today = FridgeClock.INSTANCE.todayEpochDay();
+
+		long before = usedHeap();
+		List<Grocery> groceries = new ArrayList<Grocery>(rows);
+		for (int i = 0; i < rows; i++)
+		{
+			groceries.add(new Grocery(i + 1, items[i % items.length], LocalDate.ofEpochDay(today - i % 365),
+				1 + i % 5, SECTIONS[i % SECTIONS.length]));
+		}
+		long listBytes = usedHeap() - before;
+
+		before = usedHeap();
+		GrocerySnapshot snapshot = of(groceries);
+		long snapshotBytes = usedHeap() - before;
+
+		System.out.println("rows: " + rows);
+		System.out.printf("List<Grocery>:   %,d bytes (%.1f per row)%n", listBytes, (double) listBytes / rows);
+		System.out.printf("GrocerySnapshot: %,d bytes (%.1f per row), estimated %,d%n",
+			snapshotBytes, (double) snapshotBytes / rows, snapshot.estimateBytes());
+		System.out.println(snapshot.asList().get(rows / 2) + " " + groceries.get(rows / 2));
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++)
+			System.gc();
+
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
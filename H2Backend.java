@@ -0,0 +1,82 @@
+import java.util.*;
+
+// an H2 database embedded in the application and kept in a local file, for
+// a single user or offline; every call stays in process, with no network
+// round trip; runs in H2's MySQL mode so FridgeDSC's SQL works unchanged
+public class H2Backend implements StorageBackend {
+
+	public static final String NAME = "h2";
+
+	// settings H2 needs to take the MySQL statements and unquoted lower case names
+	public static final String MYSQL_MODE = ";MODE=MySQL;DATABASE_TO_LOWER=TRUE";
+
+	private String url;
+	private String user;
+	private String password;
+
+	// constructor
+	public H2Backend(String url, String user, String password) {
+		if (url == null || !url.startsWith("jdbc:h2:"))
+			throw new IllegalArgumentException("[ERROR] H2 url must start with jdbc:h2:");
+
+		this.url = url;
+		this.user = user != null ? user : "";
+		this.password = password != null ? password : "";
+	}
+
+	// the url of a database kept in the files starting with path
+	public static String fileUrl(String path) {
+		return "jdbc:h2:file:" + path + MYSQL_MODE;
+	}
+
+	public String getName() {
+		return NAME;
+	}
+
+	public String getDriverClassName() {
+		return "org.h2.Driver";
+	}
+
+	public String getUrl() {
+		return this.url;
+	}
+
+	public Properties getConnectionProperties() {
+		return ConnectionPool.credentials(user, password);
+	}
+
+	// keeps the tables, keys and rows of the dump and drops the rest: the
+	// database statements, MySQL's versioned comments and table locks, and
+	// the table options after CREATE TABLE; unquoting names lets H2 fold them
+	// to lower case like the names in FridgeDSC's SQL
+	public String translate(String statement) {
+		String translated = statement
+			.replaceAll("(?s)/\\*!.*?\\*/", "")
+			.replace("`", "")
+			.trim();
+
+		String upper = translated.toUpperCase();
+		if (upper.isEmpty()
+			|| upper.startsWith("DROP DATABASE") || upper.startsWith("CREATE DATABASE") || upper.startsWith("USE ")
+			|| upper.startsWith("LOCK TABLES") || upper.startsWith("UNLOCK TABLES") || upper.startsWith("SET "))
+			return null;
+
+		if (upper.startsWith("CREATE TABLE"))
+			translated = translated.replaceAll("(?s)\\)\\s*ENGINE=.*$", ")");
+
+		return translated;
+	}
+
+	// the dump inserts groceries whose items it does not list
+	public List<String> getBootstrapPrologue() {
+		return Arrays.asList("SET REFERENTIAL_INTEGRITY FALSE");
+	}
+
+	public List<String> getBootstrapEpilogue() {
+		return Arrays.asList("SET REFERENTIAL_INTEGRITY TRUE");
+	}
+
+	public String toString() {
+		return "[ backend: " + NAME + ", url: " + this.url + " ]";
+	}
+}
@@ -0,0 +1,205 @@
+import java.time.LocalDate;
+import java.util.*;
+
+// totals of the groceries in the fridge per section and per item, the
+// number that can expire and the oldest purchase date; loaded with GROUP BY
+// queries by FridgeDSC.getInventorySummary at a change version and then kept
+// up to date by applying each GroceryChange after it, so it never needs the
+// rows themselves
+public class InventorySummary {
+
+	// groceries and units on hand of one section or item
+	public static class Totals {
+		private long groceries;
+		private long quantity;
+
+		public long getGroceries() {
+			return this.groceries;
+		}
+
+		public long getQuantity() {
+			return this.quantity;
+		}
+
+		public String toString() {
+			return "[ groceries: " + this.groceries + ", quantity: " + this.quantity + " ]";
+		}
+	}
+
+	private final EnumMap<FridgeDSC.SECTION, Totals> bySection =
+		new EnumMap<FridgeDSC.SECTION, Totals>(FridgeDSC.SECTION.class);
+	private final Map<String, Totals> byItem = new TreeMap<String, Totals>();
+	private final Totals total = new Totals();
+	private final Totals expiring = new Totals();
+
+	// groceries bought per epoch day, so the oldest date survives deletes
+	private final TreeMap<Long, Long> groceriesByDay = new TreeMap<Long, Long>();
+
+	// the change version the totals hold every change up to, and the changes
+	// after it applied already by version and grocery id; a change applied
+	// when its client makes it and again when a poll brings it counts once
+	private long version;
+	private final TreeMap<Long, Set<Integer>> applied = new TreeMap<Long, Set<Integer>>();
+
+	// constructor
+	public InventorySummary() {
+		for (FridgeDSC.SECTION section: FridgeDSC.SECTION.values())
+			bySection.put(section, new Totals());
+	}
+
+	// adds groceries and quantity, either of them negative to take away, to
+	// the totals of section and itemName
+	public synchronized void add(FridgeDSC.SECTION section, String itemName, boolean expires, long groceries, long quantity) {
+		add(total, groceries, quantity);
+		add(bySection.get(section), groceries, quantity);
+		if (expires)
+			add(expiring, groceries, quantity);
+
+		Totals item = byItem.computeIfAbsent(itemName, name -> new Totals());
+		add(item, groceries, quantity);
+		if (item.groceries == 0 && item.quantity == 0)
+			byItem.remove(itemName);
+	}
+
+	private static void add(Totals totals, long groceries, long quantity) {
+		totals.groceries += groceries;
+		totals.quantity += quantity;
+	}
+
+	// counts groceries more, or fewer when negative, as bought on epochDay;
+	// a count may go below zero for a while, as this client's own changes
+	// are applied before older ones of other clients
+	public synchronized void addDay(long epochDay, long groceries) {
+		long count = groceriesByDay.getOrDefault(epochDay, 0L) + groceries;
+		if (count != 0)
+			groceriesByDay.put(epochDay, count);
+		else
+			groceriesByDay.remove(epochDay);
+	}
+
+	// patches the totals with what one mutation did, in any order, as the
+	// totals only add up; an update only
+	// changes the quantity, by the change's delta. A change with a version
+	// is applied once, and not at all when the totals already hold it
+	public synchronized void apply(GroceryChange change) {
+		if (!take(change))
+			return;
+
+		Grocery grocery = change.getGrocery();
+		long groceries = 0;
+
+		switch (change.getType())
+		{
+			case INSERTED:
+				groceries = 1;
+				break;
+			case DELETED:
+				groceries = -1;
+				break;
+			case UPDATED:
+				break;
+		}
+
+		add(grocery.getSection(), grocery.getItemName(), grocery.getItem().canExpire(), groceries, change.getQuantityDelta());
+		if (groceries != 0)
+			addDay(grocery.getEpochDay(), groceries);
+	}
+
+	// counts change as applied without applying it, for a change whose
+	// delta reached the totals before it was written
+	public synchronized void skip(GroceryChange change) {
+		take(change);
+	}
+
+	private boolean take(GroceryChange change) {
+		long changeVersion = change.getVersion();
+		if (changeVersion == 0)
+			return true;
+		if (changeVersion <= version)
+			return false;
+
+		return applied.computeIfAbsent(changeVersion, key -> new HashSet<Integer>()).add(change.getId());
+	}
+
+	// the totals hold every change up to version from now on, such as once
+	// all the changes a poll brought up to it were applied
+	public synchronized void advanceTo(long version) {
+		if (version <= this.version)
+			return;
+
+		this.version = version;
+		applied.headMap(version, true).clear();
+	}
+
+	public synchronized long getVersion() {
+		return this.version;
+	}
+
+	public synchronized long getGroceries() {
+		return total.groceries;
+	}
+
+	public synchronized long getQuantity() {
+		return total.quantity;
+	}
+
+	public synchronized long getGroceries(FridgeDSC.SECTION section) {
+		return bySection.get(section).groceries;
+	}
+
+	public synchronized long getQuantity(FridgeDSC.SECTION section) {
+		return bySection.get(section).quantity;
+	}
+
+	public synchronized long getQuantity(String itemName) {
+		Totals item = byItem.get(itemName);
+		return item != null ? item.quantity : 0;
+	}
+
+	// units on hand per item name, by name
+	public synchronized Map<String, Long> getItemQuantities() {
+		Map<String, Long> quantities = new LinkedHashMap<String, Long>();
+		for (Map.Entry<String, Totals> item: byItem.entrySet())
+			quantities.put(item.getKey(), item.getValue().quantity);
+
+		return quantities;
+	}
+
+	// the limit items with the most units on hand, most first
+	public synchronized List<Map.Entry<String, Long>> getTopItems(int limit) {
+		List<Map.Entry<String, Long>> items = new ArrayList<Map.Entry<String, Long>>(getItemQuantities().entrySet());
+		items.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+
+		return items.subList(0, Math.min(limit, items.size()));
+	}
+
+	// groceries of items that can expire
+	public synchronized long getExpiringGroceries() {
+		return expiring.groceries;
+	}
+
+	public synchronized long getExpiringQuantity() {
+		return expiring.quantity;
+	}
+
+	// purchase date of the oldest grocery, or null for an empty fridge
+	public synchronized LocalDate getOldestDate() {
+		for (Map.Entry<Long, Long> day: groceriesByDay.entrySet())
+		{
+			if (day.getValue() > 0)
+				return LocalDate.ofEpochDay(day.getKey());
+		}
+
+		return null;
+	}
+
+	public synchronized String toString() {
+		return "[ version: " + version
+			+ ", groceries: " + total.groceries
+			+ ", quantity: " + total.quantity
+			+ ", expiring: " + expiring.groceries
+			+ ", oldest: " + getOldestDate()
+			+ ", sections: " + bySection
+			+ " ]";
+	}
+}
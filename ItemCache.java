@@ -0,0 +1,112 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// read-through cache of items keyed by item name, used by the data source
+// controller so grocery rows can be mapped without a query per row
+public class ItemCache {
+
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private final int capacity;
+	private final LinkedHashMap<String, Item> items;
+
+	// set once the whole item table has been bulk loaded
+	private boolean warm;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	// constructor
+	public ItemCache(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("[ERROR] Cache capacity cannot be less than 1");
+
+		this.capacity = capacity;
+
+		// access ordered so the eldest entry is the least recently used one
+		this.items = new LinkedHashMap<String, Item>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<String, Item> eldest) {
+				return size() > ItemCache.this.capacity;
+			}
+		};
+	}
+
+	// constructor
+	public ItemCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	// returns the cached item, or null if it is not in memory
+	public synchronized Item get(String name) {
+		Item item = items.get(name);
+
+		if (item != null)
+			hits.incrementAndGet();
+		else
+			misses.incrementAndGet();
+
+		return item;
+	}
+
+	public synchronized void put(Item item) {
+		items.put(item.getName(), item);
+	}
+
+	// replaces the cache content with a bulk load of the item table
+	public synchronized void load(Collection<Item> all) {
+		items.clear();
+
+		for (Item item: all)
+			items.put(item.getName(), item);
+
+		warm = true;
+	}
+
+	public synchronized boolean isWarm() {
+		return warm;
+	}
+
+	public synchronized void invalidate(String name) {
+		items.remove(name);
+	}
+
+	public synchronized void invalidateAll() {
+		items.clear();
+		warm = false;
+	}
+
+	public synchronized int size() {
+		return items.size();
+	}
+
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public String toString() {
+		return "[ size: " + size()
+			+ ", capacity: " + this.capacity
+			+ ", hits: " + getHits()
+			+ ", misses: " + getMisses()
+			+ " ]";
+	}
+
+	// To perform some quick tests
+	public static void main(String [] args) {
+		ItemCache cache = new ItemCache(2);
+		cache.load(Arrays.asList(new Item("Milk", false), new Item("Fish", true)));
+
+		System.out.println(cache.get("Milk"));
+		cache.put(new Item("Beef", true)); // evicts Fish, the least recently used
+		System.out.println(cache.get("Fish"));
+		System.out.println(cache);
+	}
+}
@@ -0,0 +1,121 @@
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// counts durations into log scaled buckets, four to each power of two, so a
+// percentile read from it is off by at most a fifth; recording is a couple
+// of LongAdder increments without locking, cheap enough to leave on
+public class LatencyHistogram {
+
+	private static final int SUB_BITS = 2;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int BUCKETS = (64 - SUB_BITS) << SUB_BITS;
+
+	private final LongAdder[] buckets = new LongAdder[BUCKETS];
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+
+	// constructor
+	public LatencyHistogram() {
+		for (int i = 0; i < BUCKETS; i++)
+			buckets[i] = new LongAdder();
+	}
+
+	public void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+
+		buckets[bucket(nanos)].increment();
+		count.increment();
+		totalNanos.add(nanos);
+		maxNanos.accumulate(nanos);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public double getMeanNanos() {
+		long n = count.sum();
+		return n > 0 ? (double) totalNanos.sum() / n : 0;
+	}
+
+	public long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	// the duration fraction of the recordings took at most, as the middle of
+	// the bucket it falls in; 0 before anything was recorded
+	public double getPercentileNanos(double fraction) {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			counts[i] = buckets[i].sum();
+			total += counts[i];
+		}
+
+		if (total == 0)
+			return 0;
+
+		long rank = Math.max(1, (long) Math.ceil(fraction * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			seen += counts[i];
+			if (seen >= rank)
+				return Math.min((lowerBound(i) + lowerBound(i + 1) - 1) / 2.0, getMaxNanos());
+		}
+
+		return getMaxNanos();
+	}
+
+	public void reset() {
+		for (LongAdder bucket: buckets)
+			bucket.reset();
+		count.reset();
+		totalNanos.reset();
+		maxNanos.reset();
+	}
+
+	// values below SUB_BUCKETS get a bucket each; above, the power of two
+	// and the SUB_BITS bits after the leading one pick the bucket
+	static int bucket(long nanos) {
+		if (nanos < SUB_BUCKETS)
+			return (int) nanos;
+
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return ((exponent - SUB_BITS + 1) << SUB_BITS) + sub;
+	}
+
+	static long lowerBound(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		if (bucket >= BUCKETS)
+			return Long.MAX_VALUE;
+
+		int exponent = (bucket >> SUB_BITS) + SUB_BITS - 1;
+		return (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << (exponent - SUB_BITS);
+	}
+
+	public String toString() {
+		return String.format("[ count: %d, mean: %.3f ms, p50: %.3f ms, p95: %.3f ms, p99: %.3f ms, max: %.3f ms ]",
+			getCount(), getMeanNanos() / 1e6, getPercentileNanos(0.50) / 1e6, getPercentileNanos(0.95) / 1e6,
+			getPercentileNanos(0.99) / 1e6, getMaxNanos() / 1e6);
+	}
+
+	// To perform some quick tests
+	public static void main(String [] args) {
+		for (long nanos: new long[] { 0, 3, 4, 7, 8, 15, 16, 1000, 1000000, Long.MAX_VALUE })
+		{
+			int bucket = bucket(nanos);
+			System.out.println(nanos + " -> bucket " + bucket + " [" + lowerBound(bucket) + ", " + (lowerBound(bucket + 1) - 1) + "]");
+		}
+
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 1000; i++)
+			histogram.record(i * 1000L);
+		System.out.println(histogram);
+	}
+}
@@ -0,0 +1,47 @@
+-- Migrates a database created by an earlier CreateDatabaseScript.sql to the
+-- change versions FridgeFX clients sync through: a `version` on every
+-- grocery row, the `grocery_version` counter, `grocery_tombstone` for
+-- deleted groceries, `grocery_change` with the quantity delta of every
+-- change and `grocery_client`, the version each client is up to.
+--
+-- Run once against the existing database, after MigrateDateColumn.sql; new
+-- databases get these straight from CreateDatabaseScript.sql.
+
+USE `18938149`;
+
+ALTER TABLE `grocery`
+  ADD COLUMN `version` bigint(20) NOT NULL DEFAULT '0' AFTER `section`,
+  ADD KEY `version_idx` (`version`);
+
+CREATE TABLE `grocery_version` (
+  `version` bigint(20) NOT NULL,
+  `purged` bigint(20) NOT NULL DEFAULT '0'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+INSERT INTO `grocery_version` VALUES (0, 0);
+
+CREATE TABLE `grocery_tombstone` (
+  `id` int(11) NOT NULL,
+  `version` bigint(20) NOT NULL,
+  PRIMARY KEY (`id`,`version`),
+  KEY `tombstone_version_idx` (`version`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+CREATE TABLE `grocery_change` (
+  `version` bigint(20) NOT NULL,
+  `id` int(11) NOT NULL,
+  `type` varchar(8) NOT NULL,
+  `itemName` varchar(20) NOT NULL,
+  `date` date DEFAULT NULL,
+  `quantity` int(11) NOT NULL,
+  `section` varchar(10) DEFAULT NULL,
+  `delta` int(11) NOT NULL,
+  PRIMARY KEY (`version`,`id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+CREATE TABLE `grocery_client` (
+  `client` varchar(36) NOT NULL,
+  `version` bigint(20) NOT NULL,
+  `seen` bigint(20) NOT NULL,
+  PRIMARY KEY (`client`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
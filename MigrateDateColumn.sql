@@ -0,0 +1,46 @@
+-- Migrates a database created by an earlier CreateDatabaseScript.sql, where
+-- `grocery`.`date` is a varchar(10) holding dd/MM/yyyy strings, to a typed
+-- DATE column with indexes for date range queries.
+--
+-- Run once against the existing database with the mysql client, which
+-- understands DELIMITER; new databases get the DATE column straight from
+-- CreateDatabaseScript.sql.
+
+USE `18938149`;
+
+-- converts into a new column first, so no row is lost if a value does not parse
+ALTER TABLE `grocery` ADD COLUMN `date_new` date DEFAULT NULL AFTER `date`;
+
+UPDATE `grocery` SET `date_new` = STR_TO_DATE(`date`, '%d/%m/%Y') WHERE `date` IS NOT NULL;
+
+-- the old column is only dropped when every date converted; under a
+-- non-strict sql_mode STR_TO_DATE gives NULL for a value it cannot read
+-- instead of failing, so the procedure counts those rows and stops the
+-- script with an error, leaving `date` as it is. Fix the rows it reports,
+-- run the UPDATE above again and then only: CALL `migrate_date_column`();
+DROP PROCEDURE IF EXISTS `migrate_date_column`;
+
+DELIMITER $$
+CREATE PROCEDURE `migrate_date_column`()
+BEGIN
+  DECLARE unconverted INT;
+  DECLARE message VARCHAR(128);
+
+  SELECT COUNT(*) INTO unconverted FROM `grocery` WHERE `date` IS NOT NULL AND `date_new` IS NULL;
+
+  IF unconverted > 0 THEN
+    SET message = CONCAT(unconverted, ' grocery dates did not convert; `date` was kept');
+    SIGNAL SQLSTATE '45000' SET MESSAGE_TEXT = message;
+  END IF;
+
+  ALTER TABLE `grocery`
+    DROP COLUMN `date`,
+    CHANGE COLUMN `date_new` `date` date DEFAULT NULL,
+    ADD KEY `section_date_idx` (`section`,`date`),
+    ADD KEY `itemName_date_idx` (`itemName`,`date`);
+END$$
+DELIMITER ;
+
+CALL `migrate_date_column`();
+
+DROP PROCEDURE `migrate_date_column`;
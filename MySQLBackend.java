@@ -0,0 +1,74 @@
+import java.util.*;
+
+// the MySQL server the application was written against
+public class MySQLBackend implements StorageBackend {
+
+	public static final String NAME = "mysql";
+
+	private String url;
+	private String user;
+	private String password;
+	private boolean createDatabase;
+
+	// constructor; createDatabase lets the driver create the database named
+	// in url when it does not exist yet
+	public MySQLBackend(String url, String user, String password, boolean createDatabase) {
+		if (url == null || !url.startsWith("jdbc:mysql:"))
+			throw new IllegalArgumentException("[ERROR] MySQL url must start with jdbc:mysql:");
+
+		this.url = url;
+		this.user = user != null ? user : "";
+		this.password = password != null ? password : "";
+		this.createDatabase = createDatabase;
+	}
+
+	public String getName() {
+		return NAME;
+	}
+
+	public String getDriverClassName() {
+		return "com.mysql.jdbc.Driver";
+	}
+
+	public String getUrl() {
+		return this.url;
+	}
+
+	public Properties getConnectionProperties() {
+		Properties info = ConnectionPool.credentials(user, password);
+
+		// server side prepared statements stay open alongside the client side
+		// statement cache, so the server parses each statement once per connection
+		info.setProperty("useServerPrepStmts", "true");
+
+		// lets the driver send a whole JDBC batch as multi-row statements
+		info.setProperty("rewriteBatchedStatements", "true");
+
+		if (createDatabase)
+			info.setProperty("createDatabaseIfNotExist", "true");
+
+		return info;
+	}
+
+	// the dump is MySQL already; the database is the one named in the url,
+	// so the statements dropping, creating and switching databases are left out
+	public String translate(String statement) {
+		String upper = statement.trim().toUpperCase();
+		if (upper.startsWith("DROP DATABASE") || upper.startsWith("CREATE DATABASE") || upper.startsWith("USE "))
+			return null;
+
+		return statement;
+	}
+
+	public List<String> getBootstrapPrologue() {
+		return Arrays.asList("SET FOREIGN_KEY_CHECKS = 0");
+	}
+
+	public List<String> getBootstrapEpilogue() {
+		return Arrays.asList("SET FOREIGN_KEY_CHECKS = 1");
+	}
+
+	public String toString() {
+		return "[ backend: " + NAME + ", url: " + this.url + " ]";
+	}
+}
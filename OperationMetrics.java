@@ -0,0 +1,79 @@
+import java.util.concurrent.atomic.LongAdder;
+
+// calls, errors, rows and latency of one kind of operation; the getters
+// are what the FridgeMetrics MXBean shows for it
+public class OperationMetrics {
+
+	private final String name;
+	private final LongAdder calls = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	private final LongAdder rows = new LongAdder();
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	// constructor
+	public OperationMetrics(String name) {
+		this.name = name;
+	}
+
+	// records one call that took nanos and returned rows rows
+	public void record(long nanos, long rows, boolean failed) {
+		calls.increment();
+		if (failed)
+			errors.increment();
+		if (rows > 0)
+			this.rows.add(rows);
+		latency.record(nanos);
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public long getCalls() {
+		return calls.sum();
+	}
+
+	public long getErrors() {
+		return errors.sum();
+	}
+
+	public long getRows() {
+		return rows.sum();
+	}
+
+	public double getMeanMillis() {
+		return latency.getMeanNanos() / 1e6;
+	}
+
+	public double getP50Millis() {
+		return latency.getPercentileNanos(0.50) / 1e6;
+	}
+
+	public double getP95Millis() {
+		return latency.getPercentileNanos(0.95) / 1e6;
+	}
+
+	public double getP99Millis() {
+		return latency.getPercentileNanos(0.99) / 1e6;
+	}
+
+	public double getMaxMillis() {
+		return latency.getMaxNanos() / 1e6;
+	}
+
+	LatencyHistogram latency() {
+		return this.latency;
+	}
+
+	public void reset() {
+		calls.reset();
+		errors.reset();
+		rows.reset();
+		latency.reset();
+	}
+
+	public String toString() {
+		return String.format("%-24s calls: %d, errors: %d, rows: %d, mean: %.3f ms, p50: %.3f ms, p95: %.3f ms, p99: %.3f ms, max: %.3f ms",
+			name, getCalls(), getErrors(), getRows(), getMeanMillis(), getP50Millis(), getP95Millis(), getP99Millis(), getMaxMillis());
+	}
+}
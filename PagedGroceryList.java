@@ -0,0 +1,311 @@
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// read only list backing the grocery TableView when the table is too big to
+// load at once; rows are fetched a page at a time as the view asks for them,
+// and pages far from the rows in view are dropped again to bound memory. A
+// page is held as a GrocerySnapshot, and a Grocery is only made for a row
+// the view asks for, the last VIEW_CACHE_SIZE of them kept
+public class PagedGroceryList extends ObservableListBase<Grocery> {
+
+	public static final int DEFAULT_PAGE_SIZE = 200;
+	public static final int DEFAULT_MAX_PAGES = 10;
+
+	private final FridgeDSCAsync fridgeAsync;
+	private final int pageSize;
+	private final int maxPages;
+
+	private GroceryFilter filter = GroceryFilter.NONE;
+	private FridgeDSC.SORT_COLUMN sort = FridgeDSC.SORT_COLUMN.ID;
+	private boolean ascending = true;
+	private int size;
+
+	// loaded pages by page number
+	private final Map<Integer, GrocerySnapshot> pages = new HashMap<Integer, GrocerySnapshot>();
+
+	// Grocery views of the rows asked for last, by index modulo the cache size
+	private final Grocery[] views = new Grocery[GrocerySnapshot.VIEW_CACHE_SIZE];
+	private final int[] viewIndexes = new int[GrocerySnapshot.VIEW_CACHE_SIZE];
+
+	// last row of each page seen, kept after the page is dropped so the
+	// following page can be fetched with a keyset seek
+	private final Map<Integer, Grocery> lastRows = new HashMap<Integer, Grocery>();
+
+	private final Set<Integer> loading = new HashSet<Integer>();
+
+	// bumped by refresh(); loads started before it are discarded
+	private int generation;
+
+	// page of the row the view asked for last
+	private int currentPage;
+
+	// constructor
+	public PagedGroceryList(FridgeDSCAsync fridgeAsync, int pageSize, int maxPages) {
+		if (pageSize < 1)
+			throw new IllegalArgumentException("[ERROR] Page size cannot be less than 1");
+		if (maxPages < 2)
+			throw new IllegalArgumentException("[ERROR] At least 2 pages must be kept");
+
+		this.fridgeAsync = fridgeAsync;
+		this.pageSize = pageSize;
+		this.maxPages = maxPages;
+
+		refresh();
+	}
+
+	// constructor
+	public PagedGroceryList(FridgeDSCAsync fridgeAsync) {
+		this(fridgeAsync, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES);
+	}
+
+	// returns null for a row whose page is still loading; the view is told
+	// to redraw it once the page arrives
+	public Grocery get(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("[ERROR] Index: " + index + ", size: " + size);
+
+		int page = index / pageSize;
+		currentPage = page;
+
+		GrocerySnapshot rows = pages.get(page);
+		if (rows == null)
+		{
+			load(page);
+			return null;
+		}
+
+		int offset = index % pageSize;
+		if (offset >= rows.size())
+			return null;
+
+		int slot = index % views.length;
+		if (viewIndexes[slot] != index)
+		{
+			views[slot] = rows.get(offset);
+			viewIndexes[slot] = index;
+		}
+
+		return views[slot];
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	// the list methods that would walk the rows through get() only look in
+	// the pages loaded, by grocery id, as get() loads every page it reaches;
+	// the TableView selection model calls indexOf on every change
+	public int indexOf(Object o) {
+		int found = -1;
+		for (int index: indexesOf(o))
+		{
+			if (found < 0 || index < found)
+				found = index;
+		}
+
+		return found;
+	}
+
+	public int lastIndexOf(Object o) {
+		int found = -1;
+		for (int index: indexesOf(o))
+			found = Math.max(found, index);
+
+		return found;
+	}
+
+	public boolean contains(Object o) {
+		return !indexesOf(o).isEmpty();
+	}
+
+	// indexes of the grocery o in the loaded pages
+	private List<Integer> indexesOf(Object o) {
+		List<Integer> indexes = new ArrayList<Integer>();
+		if (!(o instanceof Grocery))
+			return indexes;
+
+		int id = ((Grocery) o).getId();
+		for (Map.Entry<Integer, GrocerySnapshot> entry: pages.entrySet())
+		{
+			int row = entry.getValue().indexOf(id);
+			int index = entry.getKey() * pageSize + row;
+			if (row >= 0 && index < size)
+				indexes.add(index);
+		}
+
+		return indexes;
+	}
+
+	public FridgeDSC.SORT_COLUMN getSort() {
+		return this.sort;
+	}
+
+	public boolean isAscending() {
+		return this.ascending;
+	}
+
+	public GroceryFilter getFilter() {
+		return this.filter;
+	}
+
+	// filters the rows on the database side and starts again from the top
+	public void setFilter(GroceryFilter filter) {
+		if (filter.equals(this.filter))
+			return;
+
+		this.filter = filter;
+		refresh();
+	}
+
+	// orders the rows on the database side and starts again from the top
+	public void setSort(FridgeDSC.SORT_COLUMN sort, boolean ascending) {
+		if (sort == this.sort && ascending == this.ascending)
+			return;
+
+		this.sort = sort;
+		this.ascending = ascending;
+		refresh();
+	}
+
+	// an update is patched into its loaded page; inserts and deletes shift
+	// every row after them, so those re-count and reload lazily instead; an
+	// update can also move a row in or out of the filter, which the next
+	// refresh picks up
+	public void apply(GroceryChange change) {
+		if (change.getType() != GroceryChange.TYPE.UPDATED)
+		{
+			refresh();
+			return;
+		}
+
+		for (Map.Entry<Integer, GrocerySnapshot> entry: pages.entrySet())
+		{
+			GrocerySnapshot rows = entry.getValue();
+			int row = rows.indexOf(change.getId());
+			if (row < 0)
+				continue;
+
+			Grocery old = rows.get(row);
+			entry.setValue(rows.with(row, change.getGrocery()));
+
+			int index = entry.getKey() * pageSize + row;
+			forget(index, index + 1);
+			if (index < size)
+			{
+				beginChange();
+				nextSet(index, old);
+				endChange();
+			}
+			return;
+		}
+	}
+
+	// drops every page and re-counts the rows; the view then asks for the
+	// rows in sight again
+	public void refresh() {
+		int gen = ++generation;
+		pages.clear();
+		lastRows.clear();
+		loading.clear();
+		Arrays.fill(viewIndexes, -1);
+
+		fridgeAsync.countGroceries(filter).whenCompleteAsync((count, exception) ->
+		{
+			if (gen != generation)
+				return;
+
+			if (exception != null)
+			{
+				System.out.println("ERROR: " + exception);
+				return;
+			}
+
+			int old = size;
+			size = count;
+
+			beginChange();
+			nextReplace(0, size, new ArrayList<Grocery>(Collections.nCopies(old, (Grocery) null)));
+			endChange();
+		}, Platform::runLater);
+	}
+
+	private void load(int page) {
+		if (!loading.add(page))
+			return;
+
+		int gen = generation;
+		Grocery after = lastRows.get(page - 1);
+
+		// seeks from the previous page when it is known; a jump further down
+		// needs one offset query to find where the page starts
+		CompletableFuture<GrocerySnapshot> fetch = (page == 0 || after != null)
+			? fridgeAsync.getGrocerySnapshotPage(filter, sort, ascending, after, pageSize)
+			: fridgeAsync.getGrocerySnapshotPageAt(filter, sort, ascending, page * pageSize, pageSize);
+
+		fetch.whenCompleteAsync((rows, exception) ->
+		{
+			if (gen != generation)
+				return;
+
+			loading.remove(page);
+
+			if (exception != null)
+			{
+				System.out.println("ERROR: " + exception);
+				return;
+			}
+
+			pages.put(page, rows);
+			if (rows.size() > 0)
+				lastRows.put(page, rows.get(rows.size() - 1));
+
+			evict();
+
+			// views made from an earlier load of the page may be out of date
+			int from = page * pageSize;
+			int to = Math.min(from + pageSize, size);
+			forget(from, from + pageSize);
+			if (from < to)
+			{
+				beginChange();
+				for (int i = from; i < to; i++)
+					nextSet(i, null);
+				endChange();
+			}
+		}, Platform::runLater);
+	}
+
+	// drops the views of the rows from index from to index to
+	private void forget(int from, int to) {
+		for (int index = from; index < to; index++)
+		{
+			int slot = index % views.length;
+			if (viewIndexes[slot] == index)
+			{
+				viewIndexes[slot] = -1;
+				views[slot] = null;
+			}
+		}
+	}
+
+	// drops the pages furthest from the one in view until maxPages are left
+	private void evict() {
+		while (pages.size() > maxPages)
+		{
+			int furthest = currentPage;
+			for (int page: pages.keySet())
+			{
+				if (Math.abs(page - currentPage) > Math.abs(furthest - currentPage))
+					furthest = page;
+			}
+
+			if (furthest == currentPage)
+				return;
+
+			pages.remove(furthest);
+		}
+	}
+}
@@ -0,0 +1,155 @@
+import java.sql.*;
+import java.util.*;
+
+// a connection owned by a ConnectionPool; close() hands it back to the pool
+// instead of closing the underlying JDBC connection
+public class PooledConnection implements AutoCloseable {
+
+	private final ConnectionPool pool;
+	private final Connection connection;
+	private final StatementCache statements;
+	private boolean borrowed;
+	private Thread borrower; // the thread that borrowed the connection
+
+	// statements handed out since the connection was borrowed, for cancel
+	private final Set<Statement> inUse = Collections.newSetFromMap(new IdentityHashMap<Statement, Boolean>());
+
+	// constructor
+	PooledConnection(ConnectionPool pool, Connection connection, StatementCache statements) {
+		this.pool = pool;
+		this.connection = connection;
+		this.statements = statements;
+	}
+
+	public Connection getConnection() {
+		return this.connection;
+	}
+
+	// statements come from the statement cache of this connection; closing
+	// them only gives them back to the cache
+	public PreparedStatement prepareStatement(String sql) throws SQLException {
+		return SlowQueryLog.INSTANCE.watch(use(statements.prepare(connection, sql, Statement.NO_GENERATED_KEYS)), sql, connection);
+	}
+
+	public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+		return SlowQueryLog.INSTANCE.watch(use(statements.prepare(connection, sql, autoGeneratedKeys)), sql, connection);
+	}
+
+	// a forward only, read only statement whose results are fetched fetchSize
+	// rows at a time instead of all at once; MySQL Connector/J only streams
+	// with a fetch size of Integer.MIN_VALUE, a row at a time. It is kept out
+	// of the statement cache, as the fetch size would stick to it, and holds
+	// the connection until it is closed
+	public PreparedStatement prepareStreaming(String sql, int fetchSize) throws SQLException {
+		PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+
+		try
+		{
+			boolean mysql = "MySQL".equalsIgnoreCase(connection.getMetaData().getDatabaseProductName());
+			statement.setFetchSize(mysql ? Integer.MIN_VALUE : Math.max(fetchSize, 0));
+		}
+		catch (SQLException exception)
+		{
+			statement.close();
+			throw exception;
+		}
+
+		return SlowQueryLog.INSTANCE.watch(use(statement), sql, connection);
+	}
+
+	public Statement createStatement() throws SQLException {
+		return use(connection.createStatement());
+	}
+
+	private synchronized <S extends Statement> S use(S statement) {
+		inUse.add(statement);
+		return statement;
+	}
+
+	// gives the connection back to the pool; calling it twice has no effect
+	public void close() {
+		synchronized (this)
+		{
+			if (!borrowed)
+				return;
+			borrowed = false;
+			borrower = null;
+			inUse.clear();
+		}
+
+		pool.release(this);
+	}
+
+	synchronized void setBorrowed(boolean borrowed) {
+		this.borrowed = borrowed;
+		this.borrower = borrowed ? Thread.currentThread() : null;
+	}
+
+	// cancels the statements running on the connection while thread holds
+	// it, which stops a query without interrupting the thread, as that would
+	// close an embedded H2 database's file channel; a statement that is not
+	// running is left as it is. True if thread held the connection
+	synchronized boolean cancel(Thread thread) {
+		if (!borrowed || borrower != thread)
+			return false;
+
+		for (Statement statement: inUse)
+		{
+			try
+			{
+				if (!statement.isClosed())
+					statement.cancel();
+			}
+			catch (SQLException e)
+			{
+				System.out.println("ERROR: " + e);
+			}
+		}
+
+		return true;
+	}
+
+	boolean isValid(int timeoutSeconds) {
+		try
+		{
+			return !connection.isClosed() && connection.isValid(timeoutSeconds);
+		}
+		catch (SQLException e)
+		{
+			return false;
+		}
+	}
+
+	// undoes what a borrower may have left behind; false if the connection is unusable
+	boolean reset() {
+		try
+		{
+			if (connection.isClosed())
+				return false;
+
+			if (!connection.getAutoCommit())
+			{
+				connection.rollback();
+				connection.setAutoCommit(true);
+			}
+
+			return true;
+		}
+		catch (SQLException e)
+		{
+			return false;
+		}
+	}
+
+	void closePhysical() {
+		try
+		{
+			statements.clear();
+			connection.close();
+		}
+		catch (SQLException e)
+		{
+			System.out.println("ERROR: " + e);
+		}
+	}
+}
@@ -0,0 +1,124 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.sql.*;
+import java.util.*;
+
+// creates the schema and sample rows of CreateDatabaseScript.sql in an empty
+// database, with each statement rewritten by the storage backend
+public class SchemaScript {
+
+	private final List<String> statements;
+
+	// constructor
+	public SchemaScript(List<String> statements) {
+		this.statements = statements;
+	}
+
+	// reads the statements of a script; statements end with ; at the end of
+	// a line and -- starts a comment line
+	public static SchemaScript read(File script) throws IOException {
+		List<String> statements = new ArrayList<String>();
+		StringBuilder statement = new StringBuilder();
+
+		for (String line: Files.readAllLines(script.toPath(), StandardCharsets.UTF_8))
+		{
+			String trimmed = line.trim();
+			if (trimmed.isEmpty() || trimmed.startsWith("--"))
+				continue;
+
+			statement.append(line).append('\n');
+			if (trimmed.endsWith(";"))
+			{
+				String text = statement.toString().trim();
+				statements.add(text.substring(0, text.length() - 1));
+				statement.setLength(0);
+			}
+		}
+
+		if (statement.toString().trim().length() > 0)
+			statements.add(statement.toString().trim());
+
+		return new SchemaScript(statements);
+	}
+
+	public List<String> getStatements() {
+		return this.statements;
+	}
+
+	// true once the database holds the tables FridgeDSC needs; asks the
+	// metadata, as engines differ in the case they keep table names in
+	public static boolean exists(Connection connection) throws SQLException {
+		try (ResultSet rs = connection.getMetaData().getTables(connection.getCatalog(), null, "%", new String[] { "TABLE" }))
+		{
+			while (rs.next())
+			{
+				if ("grocery_version".equalsIgnoreCase(rs.getString("TABLE_NAME")))
+					return true;
+			}
+		}
+
+		return false;
+	}
+
+	// runs the script on connection as one transaction where the backend
+	// allows it; returns how many statements ran
+	public int run(Connection connection, StorageBackend backend) throws SQLException {
+		int run = 0;
+		boolean autoCommit = connection.getAutoCommit();
+
+		try (Statement statement = connection.createStatement())
+		{
+			connection.setAutoCommit(false);
+
+			for (String sql: backend.getBootstrapPrologue())
+				statement.execute(sql);
+
+			for (String sql: statements)
+			{
+				String translated = backend.translate(sql);
+				if (translated == null)
+					continue;
+
+				try
+				{
+					statement.execute(translated);
+				}
+				catch (SQLException exception)
+				{
+					throw new SQLException("[ERROR] Schema statement failed: " + translated, exception);
+				}
+				run++;
+			}
+
+			for (String sql: backend.getBootstrapEpilogue())
+				statement.execute(sql);
+
+			connection.commit();
+		}
+		catch (SQLException exception)
+		{
+			connection.rollback();
+			throw exception;
+		}
+		finally
+		{
+			connection.setAutoCommit(autoCommit);
+		}
+
+		return run;
+	}
+
+	// To perform some quick tests
+	public static void main(String [] args) throws Exception {
+		SchemaScript script = read(new File(args.length > 0 ? args[0] : FridgeConfig.DEFAULT_SCHEMA));
+		StorageBackend backend = new H2Backend("jdbc:h2:mem:", "", "");
+
+		for (String sql: script.getStatements())
+		{
+			String translated = backend.translate(sql);
+			if (translated != null)
+				System.out.println(translated + ";\n");
+		}
+	}
+}
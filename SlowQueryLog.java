@@ -0,0 +1,226 @@
+import java.lang.reflect.*;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// logs every statement whose execute call takes longer than the threshold
+// with its SQL, bound parameters, duration and, for updates, row count; the
+// first time a statement shape is slow, its EXPLAIN plan is logged as well,
+// so a slow query does not have to be reproduced by hand to see how the
+// database ran it. Only the statement is watched, never its result sets,
+// so reading rows costs the same with the log on
+public class SlowQueryLog {
+
+	// statements slower than this many milliseconds are logged, negative to
+	// log none; off unless -Dfridge.slowQuery.threshold turns it on, as every
+	// statement watched goes through a proxy
+	public static final long DEFAULT_THRESHOLD_MILLIS = Long.getLong("fridge.slowQuery.threshold", -1);
+
+	// parameters logged per statement; long IN lists are cut short
+	public static final int MAX_LOGGED_PARAMETERS = 20;
+
+	public static final SlowQueryLog INSTANCE = new SlowQueryLog(DEFAULT_THRESHOLD_MILLIS);
+
+	private volatile long thresholdNanos;
+
+	// statement shapes whose plan was logged already
+	private final Set<String> explained = ConcurrentHashMap.newKeySet();
+
+	// constructor
+	public SlowQueryLog(long thresholdMillis) {
+		setThresholdMillis(thresholdMillis);
+	}
+
+	public void setThresholdMillis(long thresholdMillis) {
+		this.thresholdNanos = thresholdMillis < 0 ? -1 : thresholdMillis * 1000000L;
+	}
+
+	public long getThresholdMillis() {
+		return thresholdNanos < 0 ? -1 : thresholdNanos / 1000000L;
+	}
+
+	public boolean isEnabled() {
+		return thresholdNanos >= 0;
+	}
+
+	// a statement timing itself for this log; statement itself while the log is off
+	public PreparedStatement watch(PreparedStatement statement, String sql, Connection connection) {
+		if (!isEnabled())
+			return statement;
+
+		Trace trace = new Trace(statement, sql, connection);
+		return (PreparedStatement) Proxy.newProxyInstance(
+			SlowQueryLog.class.getClassLoader(), new Class<?>[] { PreparedStatement.class }, trace::invokeStatement);
+	}
+
+	// the statement with IN lists of any length written the same way
+	static String shape(String sql) {
+		return sql.replaceAll("\\?(\\s*,\\s*\\?)+", "?, ...").replaceAll("\\s+", " ").trim();
+	}
+
+	private void finish(Trace trace, long nanos, long rows) {
+		long threshold = thresholdNanos;
+		if (threshold < 0 || nanos < threshold)
+			return;
+
+		FridgeMetrics.INSTANCE.record("sql.slow", nanos, Math.max(rows, 0), false);
+
+		String shape = shape(trace.sql);
+
+		StringBuilder log = new StringBuilder();
+		log.append(String.format("SLOW QUERY: %.3f ms, ", nanos / 1e6));
+		if (rows >= 0)
+			log.append("rows: ").append(rows).append(", ");
+		log.append("sql: ").append(shape).append(", parameters: ").append(trace.describeParameters());
+
+		if (explainable(trace.sql) && explained.add(shape))
+			log.append('\n').append(explain(trace));
+
+		System.out.println(log);
+	}
+
+	private static boolean explainable(String sql) {
+		String verb = sql.trim().toUpperCase();
+		return verb.startsWith("SELECT") || verb.startsWith("UPDATE") || verb.startsWith("DELETE");
+	}
+
+	// runs EXPLAIN for the statement with its last parameters on the
+	// connection it ran on; returns the plan, a row per line
+	private static String explain(Trace trace) {
+		StringBuilder plan = new StringBuilder("EXPLAIN:");
+
+		try (PreparedStatement ps = trace.connection.prepareStatement("EXPLAIN " + trace.sql))
+		{
+			Object[] parameters = trace.explainParameters();
+			for (int i = 0; i < parameters.length; i++)
+				ps.setObject(i + 1, parameters[i]);
+
+			try (ResultSet rs = ps.executeQuery())
+			{
+				ResultSetMetaData meta = rs.getMetaData();
+				int columns = meta.getColumnCount();
+
+				plan.append("\n  ");
+				for (int i = 1; i <= columns; i++)
+					plan.append(i > 1 ? " | " : "").append(meta.getColumnLabel(i));
+
+				while (rs.next())
+				{
+					plan.append("\n  ");
+					for (int i = 1; i <= columns; i++)
+						plan.append(i > 1 ? " | " : "").append(String.valueOf(rs.getString(i)).replace("\n", "\n  "));
+				}
+			}
+		}
+		catch (SQLException exception)
+		{
+			plan.append(" failed: ").append(exception.getMessage());
+		}
+
+		return plan.toString();
+	}
+
+	// what one statement was run with, and the time it spent in the database
+	private class Trace {
+		final PreparedStatement statement;
+		final String sql;
+		final Connection connection;
+
+		Object[] parameters = new Object[8];
+		Object[] batchParameters; // parameters of the last row added to the batch
+
+		Trace(PreparedStatement statement, String sql, Connection connection) {
+			this.statement = statement;
+			this.sql = sql;
+			this.connection = connection;
+		}
+
+		// a query is timed by its execute call, which is where the driver
+		// runs it; the rows fetched after are not counted
+		Object invokeStatement(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+
+			if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer)
+				bind((Integer) args[0], name.equals("setNull") ? null : args[1]);
+			else if (name.equals("clearParameters"))
+				Arrays.fill(parameters, null);
+			else if (name.equals("addBatch") && args == null)
+				batchParameters = parameters.clone();
+
+			if (!name.startsWith("execute"))
+				return call(statement, method, args);
+
+			long start = System.nanoTime();
+			Object result = call(statement, method, args);
+			long nanos = System.nanoTime() - start;
+
+			finish(this, nanos, result instanceof ResultSet ? -1 : rows(result));
+			return result;
+		}
+
+		void bind(int index, Object value) {
+			if (index < 1)
+				return;
+			if (index > parameters.length)
+				parameters = Arrays.copyOf(parameters, Math.max(index, parameters.length * 2));
+
+			parameters[index - 1] = value;
+		}
+
+		Object[] explainParameters() {
+			Object[] bound = batchParameters != null ? batchParameters : parameters;
+			int count = (int) sql.chars().filter(c -> c == '?').count();
+			return Arrays.copyOf(bound, Math.min(count, bound.length));
+		}
+
+		String describeParameters() {
+			Object[] bound = explainParameters();
+			StringBuilder text = new StringBuilder("[");
+			for (int i = 0; i < bound.length && i < MAX_LOGGED_PARAMETERS; i++)
+			{
+				if (i > 0)
+					text.append(", ");
+				text.append(bound[i] instanceof String ? "'" + bound[i] + "'" : String.valueOf(bound[i]));
+			}
+			if (bound.length > MAX_LOGGED_PARAMETERS)
+				text.append(", ... ").append(bound.length - MAX_LOGGED_PARAMETERS).append(" more");
+
+			return text.append("]").toString();
+		}
+	}
+
+	// rows an execute call touched: the update count, or the sum over a batch
+	private static long rows(Object result) {
+		if (result instanceof Integer)
+			return (Integer) result;
+		if (result instanceof Long)
+			return (Long) result;
+		if (result instanceof int[])
+		{
+			long rows = 0;
+			for (int count: (int[]) result)
+				rows += Math.max(count, 0);
+			return rows;
+		}
+		if (result instanceof long[])
+		{
+			long rows = 0;
+			for (long count: (long[]) result)
+				rows += Math.max(count, 0);
+			return rows;
+		}
+
+		return 0;
+	}
+
+	private static Object call(Object target, Method method, Object[] args) throws Throwable {
+		try
+		{
+			return method.invoke(target, args);
+		}
+		catch (InvocationTargetException e)
+		{
+			throw e.getCause();
+		}
+	}
+}
@@ -0,0 +1,175 @@
+import java.lang.reflect.*;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+// prepared statements of one pooled connection keyed by their SQL text; the
+// statements handed out are proxies whose close() keeps them open for reuse
+public class StatementCache {
+
+	public static final int DEFAULT_SIZE = 32;
+
+	// hit and miss counters shared by every cache of a pool
+	public static class Stats {
+		private final LongAdder hits = new LongAdder();
+		private final LongAdder misses = new LongAdder();
+		private final LongAdder evictions = new LongAdder();
+
+		public long getHits() {
+			return hits.sum();
+		}
+
+		public long getMisses() {
+			return misses.sum();
+		}
+
+		public long getEvictions() {
+			return evictions.sum();
+		}
+
+		public double getHitRate() {
+			long hits = getHits();
+			long total = hits + getMisses();
+
+			return total == 0 ? 0 : (double) hits / total;
+		}
+
+		public String toString() {
+			return "[ hits: " + getHits()
+				+ ", misses: " + getMisses()
+				+ ", evictions: " + getEvictions()
+				+ ", hit rate: " + String.format("%.2f", getHitRate())
+				+ " ]";
+		}
+	}
+
+	private static class Entry {
+		PreparedStatement statement;
+		PreparedStatement proxy;
+		boolean inUse;
+		boolean evicted;
+	}
+
+	private final int size;
+	private final Stats stats;
+	private final LinkedHashMap<String, Entry> entries;
+
+	// constructor
+	public StatementCache(int size, Stats stats) {
+		if (size < 1)
+			throw new IllegalArgumentException("[ERROR] Statement cache size cannot be less than 1");
+
+		this.size = size;
+		this.stats = stats;
+
+		// access ordered so the eldest entry is the least recently used one
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				if (size() <= StatementCache.this.size)
+					return false;
+
+				evict(eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+	// returns the cached statement for sql, preparing it on a miss; a
+	// statement still open by the same borrower is never handed out twice
+	public PreparedStatement prepare(Connection connection, String sql, int autoGeneratedKeys) throws SQLException {
+		String key = autoGeneratedKeys + ":" + sql;
+		Entry entry = entries.get(key);
+
+		if (entry != null && !entry.inUse)
+		{
+			stats.hits.increment();
+			entry.inUse = true;
+			return entry.proxy;
+		}
+
+		stats.misses.increment();
+		PreparedStatement statement = connection.prepareStatement(sql, autoGeneratedKeys);
+
+		// already in use: hand out a plain statement the caller closes for real
+		if (entry != null)
+			return statement;
+
+		entry = new Entry();
+		entry.statement = statement;
+		entry.proxy = proxy(entry);
+		entry.inUse = true;
+		entries.put(key, entry);
+
+		return entry.proxy;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	// closes every cached statement, called before the connection is closed
+	public void clear() {
+		for (Entry entry: entries.values())
+			closeQuietly(entry.statement);
+
+		entries.clear();
+	}
+
+	private void evict(Entry entry) {
+		stats.evictions.increment();
+		entry.evicted = true;
+
+		// a statement still in use is closed when its borrower closes it
+		if (!entry.inUse)
+			closeQuietly(entry.statement);
+	}
+
+	private void release(Entry entry) throws SQLException {
+		entry.inUse = false;
+
+		if (entry.evicted)
+		{
+			entry.statement.close();
+		}
+		else
+		{
+			entry.statement.clearParameters();
+			entry.statement.clearBatch();
+		}
+	}
+
+	private PreparedStatement proxy(Entry entry) {
+		InvocationHandler handler = (proxy, method, args) ->
+		{
+			if (method.getName().equals("close") && method.getParameterCount() == 0)
+			{
+				if (entry.inUse)
+					release(entry);
+				return null;
+			}
+
+			try
+			{
+				return method.invoke(entry.statement, args);
+			}
+			catch (InvocationTargetException e)
+			{
+				throw e.getCause();
+			}
+		};
+
+		return (PreparedStatement) Proxy.newProxyInstance(
+			StatementCache.class.getClassLoader(), new Class<?>[] { PreparedStatement.class }, handler);
+	}
+
+	private static void closeQuietly(Statement statement) {
+		try
+		{
+			statement.close();
+		}
+		catch (SQLException e)
+		{
+			System.out.println("ERROR: " + e);
+		}
+	}
+}
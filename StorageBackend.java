@@ -0,0 +1,26 @@
+import java.util.*;
+
+// a database engine the data source controller can keep the groceries in;
+// FridgeDSC only talks JDBC, so a backend supplies where to connect, the
+// connection settings its driver is tuned with and its dialect of the schema
+public interface StorageBackend {
+
+	// name the backend is picked by with fridge.backend
+	String getName();
+
+	// JDBC driver, loaded by name so it only has to be on the runtime classpath
+	String getDriverClassName();
+
+	String getUrl();
+
+	// credentials and driver settings for every pooled connection
+	Properties getConnectionProperties();
+
+	// statement run on a connection to bootstrap the schema, rewritten to this
+	// backend's dialect; null leaves the statement out
+	String translate(String statement);
+
+	// statements run before and after the schema statements
+	List<String> getBootstrapPrologue();
+	List<String> getBootstrapEpilogue();
+}
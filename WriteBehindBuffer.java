@@ -0,0 +1,215 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+// coalesces the uses of groceries made in quick succession, such as
+// repeated UPDATE ONE clicks, per grocery id and writes them behind: the
+// caller shows the decremented grocery at once, and a flush sends one
+// "quantity = quantity - n" per id, all in one batch through
+// FridgeDSC.useGroceries, a short while after the first use and on close
+public class WriteBehindBuffer {
+
+	// how long a use waits for more uses before it is written
+	public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 300;
+
+	// what one flush did
+	public static class Flush {
+		private final Map<Integer, Integer> counts;
+		private final List<GroceryChange> changes;
+		private final Map<Integer, Grocery> rejected;
+		private final Exception failure;
+
+		Flush(Map<Integer, Integer> counts, List<GroceryChange> changes, Map<Integer, Grocery> rejected, Exception failure) {
+			this.counts = counts;
+			this.changes = changes;
+			this.rejected = rejected;
+			this.failure = failure;
+		}
+
+		// uses written per grocery id
+		public Map<Integer, Integer> getCounts() {
+			return this.counts;
+		}
+
+		// the groceries used, as they are after the flush
+		public List<GroceryChange> getChanges() {
+			return this.changes;
+		}
+
+		// the groceries the database would not take the uses of, as they are
+		// now; a grocery deleted meanwhile maps to null
+		public Map<Integer, Grocery> getRejected() {
+			return this.rejected;
+		}
+
+		// why the flush failed, or null; the groceries of counts found in
+		// neither changes nor rejected are unknown then
+		public Exception getFailure() {
+			return this.failure;
+		}
+
+		public String toString() {
+			return "[ counts: " + this.counts
+				+ ", used: " + this.changes.size()
+				+ ", rejected: " + this.rejected.keySet()
+				+ (this.failure != null ? ", failure: " + this.failure : "")
+				+ " ]";
+		}
+	}
+
+	private final FridgeDSC fridgeDSC;
+	private final Consumer<Flush> onFlush;
+	private final Executor callbackExecutor;
+	private final long flushIntervalMillis;
+
+	// writes one flush at a time, so the flushes reach the database in order
+	private final ScheduledExecutorService writer;
+
+	private Map<Integer, Integer> pending = new LinkedHashMap<Integer, Integer>();
+	private ScheduledFuture<?> scheduled;
+	private int inFlight; // flushes taken from pending but not yet handed to onFlush
+	private boolean closed;
+
+	// constructor; onFlush gets the outcome of every flush through callbackExecutor
+	public WriteBehindBuffer(FridgeDSC fridgeDSC, long flushIntervalMillis, Consumer<Flush> onFlush, Executor callbackExecutor) {
+		this.fridgeDSC = fridgeDSC;
+		this.flushIntervalMillis = flushIntervalMillis;
+		this.onFlush = onFlush;
+		this.callbackExecutor = callbackExecutor;
+
+		this.writer = Executors.newSingleThreadScheduledExecutor(runnable ->
+		{
+			Thread thread = new Thread(runnable, "WriteBehindBuffer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	// takes one of shown, the grocery as the user sees it, and returns it
+	// with one less, to be shown until the flush; refused like useGrocery
+	// when it would go below Grocery.MINIMUM_QUANTITY
+	public synchronized Grocery use(Grocery shown) throws Exception {
+		if (closed)
+			throw new IllegalStateException("[ERROR] Write behind buffer is closed");
+		if (shown.getQuantity() - 1 < Grocery.MINIMUM_QUANTITY)
+			throw new Exception("Quantity cannot be less than 1");
+
+		Grocery used = new Grocery(shown.getId(), shown.getItem(), shown.getDate(), shown.getQuantity() - 1, shown.getSection());
+		pending.merge(shown.getId(), 1, Integer::sum);
+
+		if (scheduled == null)
+			scheduled = writer.schedule(this::writePending, flushIntervalMillis, TimeUnit.MILLISECONDS);
+
+		return used;
+	}
+
+	// uses of id not written yet
+	public synchronized int getPending(int id) {
+		return pending.getOrDefault(id, 0);
+	}
+
+	// true when every use was written and its outcome handed over
+	public synchronized boolean isIdle() {
+		return pending.isEmpty() && inFlight == 0;
+	}
+
+	// writes what is pending now instead of waiting for the timer
+	public void flush() {
+		writer.execute(this::writePending);
+	}
+
+	// writes what is pending and waits for it, then stops taking uses
+	public void close() throws Exception {
+		synchronized (this)
+		{
+			if (closed)
+				return;
+			closed = true;
+		}
+
+		try
+		{
+			writer.submit(this::writePending).get();
+		}
+		finally
+		{
+			writer.shutdown();
+		}
+	}
+
+	// runs on the writer thread
+	private void writePending() {
+		Map<Integer, Integer> counts;
+
+		synchronized (this)
+		{
+			if (scheduled != null)
+			{
+				scheduled.cancel(false);
+				scheduled = null;
+			}
+
+			if (pending.isEmpty())
+				return;
+
+			counts = pending;
+			pending = new LinkedHashMap<Integer, Integer>();
+			inFlight++;
+		}
+
+		long start = System.nanoTime();
+		Flush flush = write(counts);
+		FridgeMetrics.INSTANCE.record("writeBehind.flush", System.nanoTime() - start, counts.size(), flush.getFailure() != null);
+
+		callbackExecutor.execute(() ->
+		{
+			synchronized (this)
+			{
+				inFlight--;
+			}
+			onFlush.accept(flush);
+		});
+	}
+
+	private Flush write(Map<Integer, Integer> counts) {
+		List<GroceryChange> changes;
+		try
+		{
+			changes = fridgeDSC.useGroceries(counts);
+		}
+		catch (Exception exception)
+		{
+			System.out.println("ERROR: " + exception);
+			return new Flush(counts, new ArrayList<GroceryChange>(), new HashMap<Integer, Grocery>(), exception);
+		}
+
+		Set<Integer> used = new HashSet<Integer>();
+		for (GroceryChange change: changes)
+			used.add(change.getId());
+
+		// each rejected grocery is read again, so it can be shown as it is
+		Map<Integer, Grocery> rejected = new LinkedHashMap<Integer, Grocery>();
+		try
+		{
+			for (int id: counts.keySet())
+			{
+				if (!used.contains(id))
+					rejected.put(id, fridgeDSC.searchGrocery(id));
+			}
+		}
+		catch (Exception exception)
+		{
+			System.out.println("ERROR: " + exception);
+			return new Flush(counts, changes, rejected, exception);
+		}
+
+		return new Flush(counts, changes, rejected, null);
+	}
+
+	public synchronized String toString() {
+		return "[ pending: " + this.pending
+			+ ", in flight: " + this.inFlight
+			+ ", closed: " + this.closed
+			+ " ]";
+	}
+}
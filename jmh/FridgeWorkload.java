@@ -0,0 +1,162 @@
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.*;
+
+import bench.FridgeBenchmark;
+
+// the work of the JMH benchmarks in bench.FridgeBenchmark: seeds a database
+// with rows groceries and calls the data source controller and the Grocery
+// formatting on it; the schema comes from CreateDatabaseScript.sql through
+// SchemaScript, as the application creates it
+//
+// -Dfridge.bench.backend  h2 (default) or mysql
+// -Dfridge.bench.url      database to seed, emptied first (default: in memory H2)
+// -Dfridge.bench.user     database user (default: sa)
+// -Dfridge.bench.password database password
+// -Dfridge.bench.schema   script the schema is created from (default: CreateDatabaseScript.sql)
+public class FridgeWorkload implements FridgeBenchmark.Workload {
+
+	public static final String URL = "jdbc:h2:mem:fridgebench" + H2Backend.MYSQL_MODE + ";DB_CLOSE_DELAY=-1";
+
+	// quantity every seeded grocery starts with, so useGrocery never runs out
+	public static final int SEED_QUANTITY = 1000000000;
+
+	// groceries added per addGroceries call while seeding
+	public static final int SEED_BATCH = 10000;
+
+	// groceries read back for the formatting benchmarks
+	public static final int SAMPLE_SIZE = 10000;
+
+	private static final String[] ITEMS = { "Beef", "Broccoli", "Cabbage", "Fish", "Frozen Yogurt",
+		"Cottage Cheese", "Milk", "Oranges", "Paddle Pop", "Pecorino", "Tangerines", "Tofu" };
+
+	private final FridgeDSC fridgeDSC = new FridgeDSC();
+	private final Random random = new Random(42);
+	private final List<Integer> added = new ArrayList<Integer>();
+
+	private int[] ids;
+	private Grocery[] groceries;
+	private LocalDate[] dates;
+	private int next;
+
+	// creates the schema from the script in an emptied database, seeds it
+	// with rows groceries bought over the last year and connects to it
+	public void setUp(int rows) throws Exception {
+		FridgeConfig config = config();
+		StorageBackend backend = config.getBackend();
+		Class.forName(backend.getDriverClassName());
+
+		try (Connection connection = DriverManager.getConnection(backend.getUrl(), backend.getConnectionProperties()))
+		{
+			SchemaScript.read(config.getSchema()).run(connection, backend);
+		}
+
+		FridgeDSC.connect(config);
+		fridgeDSC.invalidateItems();
+
+		System.out.println("seeding " + rows + " groceries");
+		ids = seed(rows);
+
+		// the change log of the seeding is not what is timed
+		fridgeDSC.purgeTombstones();
+
+		List<Grocery> sample = fridgeDSC.getGroceryPage(FridgeDSC.SORT_COLUMN.ID, true, null, Math.min(rows, SAMPLE_SIZE));
+		groceries = sample.toArray(new Grocery[0]);
+		dates = new LocalDate[groceries.length];
+		for (int i = 0; i < groceries.length; i++)
+			dates[i] = groceries[i].getDate();
+	}
+
+	public void tearDown() throws Exception {
+		FridgeDSC.disconnect();
+	}
+
+	// the settings of the database benchmarked, from the fridge.bench.* properties
+	private static FridgeConfig config() {
+		Properties properties = new Properties();
+		properties.setProperty("fridge.backend", System.getProperty("fridge.bench.backend", H2Backend.NAME));
+		properties.setProperty("fridge.url", System.getProperty("fridge.bench.url", URL));
+		properties.setProperty("fridge.user", System.getProperty("fridge.bench.user", "sa"));
+		properties.setProperty("fridge.password", System.getProperty("fridge.bench.password", ""));
+		properties.setProperty("fridge.schema", System.getProperty("fridge.bench.schema", FridgeConfig.DEFAULT_SCHEMA));
+		properties.setProperty("fridge.bootstrap", "false");
+
+		return new FridgeConfig(properties);
+	}
+
+	// adds rows groceries bought over the last year; returns their ids
+	private int[] seed(int rows) throws Exception {
+		int[] ids = new int[rows];
+		int seeded = 0;
+
+		while (seeded < rows)
+		{
+			List<GroceryLine> lines = new ArrayList<GroceryLine>();
+			for (int i = seeded; i < Math.min(seeded + SEED_BATCH, rows); i++)
+			{
+				lines.add(new GroceryLine(ITEMS[random.nextInt(ITEMS.length)], SEED_QUANTITY,
+					FridgeDSC.SECTION.values()[random.nextInt(4)], LocalDate.now().minusDays(random.nextInt(365))));
+			}
+
+			for (GroceryChange change: fridgeDSC.addGroceries(lines))
+				ids[seeded++] = change.getId();
+		}
+
+		return ids;
+	}
+
+	// the next of length indexes in turn; the formatting benchmarks run often
+	// enough for the counter to wrap
+	private int next(int length) {
+		return (next++ & Integer.MAX_VALUE) % length;
+	}
+
+	public Object getAllGroceries() throws Exception {
+		return fridgeDSC.getAllGroceries();
+	}
+
+	public Object searchGrocery() throws Exception {
+		return fridgeDSC.searchGrocery(ids[random.nextInt(ids.length)]);
+	}
+
+	public Object useGrocery() throws Exception {
+		return fridgeDSC.useGrocery(ids[random.nextInt(ids.length)]);
+	}
+
+	public Object addGrocery() throws Exception {
+		int i = next(ITEMS.length);
+		GroceryChange change = fridgeDSC.addGrocery(ITEMS[i], 1, FridgeDSC.SECTION.values()[i % 4]);
+		added.add(change.getId());
+		return change;
+	}
+
+	public void removeAdded() throws Exception {
+		for (int id: added)
+			fridgeDSC.removeGrocery(id);
+		added.clear();
+	}
+
+	public int addRemovable() throws Exception {
+		return fridgeDSC.addGrocery(ITEMS[0], 1, FridgeDSC.SECTION.MEAT).getId();
+	}
+
+	public Object removeGrocery(int id) throws Exception {
+		return fridgeDSC.removeGrocery(id);
+	}
+
+	public Object groceryToString() {
+		return groceries[next(groceries.length)].toString();
+	}
+
+	public Object groceryDateStr() {
+		return groceries[next(groceries.length)].getDateStr();
+	}
+
+	public Object groceryDaysAgo() {
+		return groceries[next(groceries.length)].getDaysAgo();
+	}
+
+	public Object calcDaysAgoStr() {
+		return FridgeDSC.calcDaysAgoStr(dates[next(dates.length)]);
+	}
+}
@@ -0,0 +1,140 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// JMH benchmarks of the data source controller and the Grocery formatting,
+// against a database seeded with each row count. Run them all with JSON
+// results in build/results/jmh/results.json by
+//
+//   gradle jmh
+//
+// or pick some from the jar, e.g.
+//
+//   gradle jmhJar
+//   java -jar build/libs/fridge-jmh.jar FridgeBenchmark.searchGrocery -p rows=1000 -rf json -rff results.json
+//
+// JMH will not take a benchmark in the default package, where the classes
+// benchmarked are, and those cannot be imported from a package; so the
+// work is done by FridgeWorkload, in the default package, through Workload.
+// See FridgeWorkload for the -Dfridge.bench.* settings, passed to the forked
+// JVMs with -jvmArgsAppend
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FridgeBenchmark {
+
+	// what each benchmark runs, on the database FridgeWorkload seeds
+	public interface Workload {
+		void setUp(int rows) throws Exception;
+		void tearDown() throws Exception;
+
+		Object getAllGroceries() throws Exception;
+		Object searchGrocery() throws Exception;
+		Object useGrocery() throws Exception;
+
+		// adds a grocery, remembered until removeAdded
+		Object addGrocery() throws Exception;
+		void removeAdded() throws Exception;
+
+		// adds a grocery for removeGrocery; returns its id
+		int addRemovable() throws Exception;
+		Object removeGrocery(int id) throws Exception;
+
+		Object groceryToString();
+		Object groceryDateStr();
+		Object groceryDaysAgo();
+		Object calcDaysAgoStr();
+	}
+
+	@Param({ "1000", "100000", "1000000" })
+	public int rows;
+
+	Workload workload;
+
+	// the groceries addGrocery added, removed again after each iteration so
+	// the table stays near its seeded size
+	@State(Scope.Benchmark)
+	public static class Added {
+		@TearDown(Level.Iteration)
+		public void remove(FridgeBenchmark benchmark) throws Exception {
+			benchmark.workload.removeAdded();
+		}
+	}
+
+	// a grocery added before each removeGrocery call, outside its timing
+	@State(Scope.Benchmark)
+	public static class Removable {
+		int id;
+
+		@Setup(Level.Invocation)
+		public void add(FridgeBenchmark benchmark) throws Exception {
+			id = benchmark.workload.addRemovable();
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		workload = (Workload) Class.forName("FridgeWorkload").getDeclaredConstructor().newInstance();
+		workload.setUp(rows);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		workload.tearDown();
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public Object getAllGroceries() throws Exception {
+		return workload.getAllGroceries();
+	}
+
+	@Benchmark
+	public Object searchGrocery() throws Exception {
+		return workload.searchGrocery();
+	}
+
+	@Benchmark
+	public Object useGrocery() throws Exception {
+		return workload.useGrocery();
+	}
+
+	@Benchmark
+	public Object addGrocery(Added added) throws Exception {
+		return workload.addGrocery();
+	}
+
+	@Benchmark
+	public Object removeGrocery(Removable removable) throws Exception {
+		return workload.removeGrocery(removable.id);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public Object groceryToString() {
+		return workload.groceryToString();
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public Object groceryDateStr() {
+		return workload.groceryDateStr();
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public Object groceryDaysAgo() {
+		return workload.groceryDaysAgo();
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public Object calcDaysAgoStr() {
+		return workload.calcDaysAgoStr();
+	}
+}
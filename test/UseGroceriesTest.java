@@ -0,0 +1,122 @@
+import java.io.File;
+import java.lang.reflect.*;
+import java.sql.*;
+import java.util.*;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// FridgeDSC.useGroceries against an embedded database whose driver answers
+// every batch with SUCCESS_NO_INFO, as MySQL Connector/J may when it
+// rewrites the batch into one statement
+public class UseGroceriesTest {
+
+	private static final String H2_URL = "jdbc:h2:mem:usegroceries" + H2Backend.MYSQL_MODE + ";DB_CLOSE_DELAY=-1";
+
+	// hands out the H2 connections of "jdbc:noinfo:" + an H2 url, with the
+	// counts executeBatch returns all replaced by SUCCESS_NO_INFO
+	static class NoInfoDriver implements Driver {
+		static final String PREFIX = "jdbc:noinfo:";
+
+		public Connection connect(String url, Properties info) throws SQLException {
+			if (!acceptsURL(url))
+				return null;
+
+			return wrap(Connection.class, DriverManager.getConnection("jdbc:" + url.substring(PREFIX.length()), info));
+		}
+
+		// proxies target; statements it makes are proxied too, and their
+		// batch counts hidden
+		@SuppressWarnings("unchecked")
+		static <T> T wrap(Class<T> type, T target) {
+			return (T) Proxy.newProxyInstance(UseGroceriesTest.class.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) ->
+			{
+				Object result;
+				try
+				{
+					result = method.invoke(target, args);
+				}
+				catch (InvocationTargetException exception)
+				{
+					throw exception.getCause();
+				}
+
+				if (result instanceof PreparedStatement)
+					return wrap(PreparedStatement.class, (PreparedStatement) result);
+				if (method.getName().equals("executeBatch"))
+				{
+					int[] counts = (int[]) result;
+					Arrays.fill(counts, Statement.SUCCESS_NO_INFO);
+					return counts;
+				}
+
+				return result;
+			});
+		}
+
+		public boolean acceptsURL(String url) {
+			return url.startsWith(PREFIX);
+		}
+
+		public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+			return new DriverPropertyInfo[0];
+		}
+
+		public int getMajorVersion() {
+			return 1;
+		}
+
+		public int getMinorVersion() {
+			return 0;
+		}
+
+		public boolean jdbcCompliant() {
+			return false;
+		}
+
+		public Logger getParentLogger() {
+			return Logger.getGlobal();
+		}
+	}
+
+	private final FridgeDSC fridgeDSC = new FridgeDSC();
+
+	@BeforeAll
+	static void connect() throws Exception {
+		Class.forName("org.h2.Driver");
+		DriverManager.registerDriver(new NoInfoDriver());
+
+		H2Backend backend = new H2Backend(H2_URL, "sa", "");
+		try (Connection connection = DriverManager.getConnection(H2_URL, backend.getConnectionProperties()))
+		{
+			SchemaScript.read(new File(FridgeConfig.DEFAULT_SCHEMA)).run(connection, backend);
+		}
+
+		FridgeDSC.connect(NoInfoDriver.PREFIX + H2_URL.substring("jdbc:".length()), backend.getConnectionProperties());
+	}
+
+	@AfterAll
+	static void disconnect() throws Exception {
+		FridgeDSC.disconnect();
+	}
+
+	@Test
+	void usesReportedWithoutCountsAreTakenByTheirVersion() throws Exception {
+		int plenty = fridgeDSC.addGrocery("Beef", 5, FridgeDSC.SECTION.MEAT).getId();
+		int scarce = fridgeDSC.addGrocery("Milk", 2, FridgeDSC.SECTION.COOLING).getId();
+
+		Map<Integer, Integer> counts = new LinkedHashMap<Integer, Integer>();
+		counts.put(plenty, 3);
+		counts.put(scarce, 2);
+
+		List<GroceryChange> changes = fridgeDSC.useGroceries(counts);
+
+		assertEquals(1, changes.size());
+		assertEquals(plenty, changes.get(0).getId());
+		assertEquals(2, changes.get(0).getGrocery().getQuantity());
+		assertEquals(-3, changes.get(0).getQuantityDelta());
+		assertEquals(2, fridgeDSC.searchGrocery(scarce).getQuantity());
+	}
+}